@@ -0,0 +1,91 @@
+package uk.ac.soton.comp1206.component;
+
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import uk.ac.soton.comp1206.game.ChatLog;
+
+/**
+ * Custom UI component displaying the messages in a ChatLog.
+ *
+ * A fixed set of Text rows is created up front and reused, showing a window onto the log. The window follows the
+ * newest messages unless the user has scrolled back through the history.
+ */
+public class ChatView extends VBox {
+
+    /**
+     * The log being displayed
+     */
+    private final ChatLog chatLog;
+
+    /**
+     * The reused rows
+     */
+    private final Text[] rows;
+
+    /**
+     * How many messages back from the newest the window has been scrolled
+     */
+    private int scrollOffset = 0;
+
+    /**
+     * Creates a new view of the given chat log
+     * @param chatLog chat log
+     * @param visibleRows number of messages visible at once
+     */
+    public ChatView(ChatLog chatLog, int visibleRows) {
+        this.chatLog = chatLog;
+        getStyleClass().add("messages");
+
+        rows = new Text[visibleRows];
+        for (int i = 0; i < visibleRows; i++) {
+            rows[i] = new Text();
+            getChildren().add(rows[i]);
+        }
+
+        chatLog.setMessagesAddedListener(this::messagesAdded);
+        setOnScroll(this::scroll);
+    }
+
+    /**
+     * Handles a batch of messages being added to the log
+     * @param count number of messages added
+     */
+    private void messagesAdded(int count) {
+        //Keep the same messages in view if the user has scrolled back
+        if (scrollOffset > 0) {
+            scrollOffset += count;
+        }
+        refresh();
+    }
+
+    /**
+     * Moves the window through the history when scrolled
+     * @param event scroll event
+     */
+    private void scroll(ScrollEvent event) {
+        if (event.getDeltaY() == 0) return;
+
+        scrollOffset += event.getDeltaY() > 0 ? 1 : -1;
+        event.consume();
+        refresh();
+    }
+
+    /**
+     * Updates the rows to show the current window onto the log
+     */
+    private void refresh() {
+        var size = chatLog.size();
+        scrollOffset = Math.max(0, Math.min(scrollOffset, size - rows.length));
+
+        //Fill the rows from the top, so a short log sits at the top of the view
+        var first = Math.max(0, size - rows.length - scrollOffset);
+        for (int i = 0; i < rows.length; i++) {
+            var index = first + i;
+            var text = index < size ? chatLog.get(index) : "";
+            if (!text.equals(rows[i].getText())) {
+                rows[i].setText(text);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package uk.ac.soton.comp1206.component;
 
+import java.util.concurrent.atomic.LongAdder;
 import javafx.animation.AnimationTimer;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -16,7 +17,7 @@ import org.apache.logging.log4j.Logger;
  *
  * Displays an empty square (when the value is 0) or a coloured square depending on value.
  *
- * The GameBlock value should be bound to a corresponding block in the Grid model.
+ * The GameBlock value is kept in step with the corresponding block in the Grid model by its GameBoard.
  */
 public class GameBlock extends Canvas {
 
@@ -46,6 +47,11 @@ public class GameBlock extends Canvas {
         //endregion
     };
 
+    /**
+     * The number of times any block has been repainted
+     */
+    private static final LongAdder repaints = new LongAdder();
+
     /**
      * The GameBoard the block is a part of
      */
@@ -126,6 +132,8 @@ public class GameBlock extends Canvas {
      * Handle painting of the block canvas
      */
     public void paint() {
+        repaints.increment();
+
         //If the block is empty, paint as empty
         if(value.get() == 0) {
             paintEmpty();
@@ -221,6 +229,14 @@ public class GameBlock extends Canvas {
         gc.setGlobalAlpha(1);
     }
 
+    /**
+     * Get the number of times any block has been repainted
+     * @return total repaints
+     */
+    public static long getRepaintCount() {
+        return repaints.sum();
+    }
+
     /**
      * Get the column of this block
      * @return column number
@@ -246,11 +262,12 @@ public class GameBlock extends Canvas {
     }
 
     /**
-     * Bind the value of this block to another property. Used to link the visual block to a corresponding block in the Grid.
-     * @param input property to bind the value to
+     * Set the value of this block, repainting it if the value changed. Used by the GameBoard to apply changes from the
+     * corresponding block in the Grid.
+     * @param value the new value
      */
-    public void bind(ObservableValue<? extends Number> input) {
-        value.bind(input);
+    public void setValue(int value) {
+        this.value.set(value);
     }
 
     /**
@@ -1,5 +1,6 @@
 package uk.ac.soton.comp1206.component;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
@@ -128,6 +129,21 @@ public class GameBoard extends GridPane {
                 createBlock(x,y);
             }
         }
+
+        //Apply batches of changes from the Grid once per pulse
+        grid.setGridChangedListener(this::gridChanged);
+    }
+
+    /**
+     * Applies a batch of changes from the Grid to the blocks in a single pass
+     * @param changed the changed cells, where cell (x, y) is stored at index y * cols + x
+     */
+    protected void gridChanged(BitSet changed) {
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            var x = i % cols;
+            var y = i / cols;
+            blocks[x][y].setValue(grid.get(x,y));
+        }
     }
 
     /**
@@ -149,8 +165,8 @@ public class GameBoard extends GridPane {
         //Add to our block directory
         blocks[x][y] = block;
 
-        //Link the GameBlock component to the corresponding value in the Grid
-        block.bind(grid.getGridProperty(x,y));
+        //Start the GameBlock component from the corresponding value in the Grid
+        block.setValue(grid.get(x,y));
 
         //Add a mouse click handler to the block to trigger GameBoard blockClicked method
         block.setOnMouseClicked(e -> blockClicked(e, block));
@@ -1,14 +1,15 @@
 package uk.ac.soton.comp1206.component;
 
-import javafx.application.Platform;
+import java.util.List;
 import javafx.beans.property.ListProperty;
 import javafx.beans.property.SimpleListProperty;
 import javafx.collections.ListChangeListener;
 import javafx.geometry.Pos;
+import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
-import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.PlayerState;
 
 /**
  * Custom UI component that holds the leaderboard in a multiplayer challenge
@@ -20,7 +21,7 @@ public class LeaderBoard extends ScoresList {
     /**
      * Holds the list of scores of all the players in the game
      */
-    private ListProperty<Pair<Pair<String, String>, String>> leaderBoardScores;
+    private ListProperty<PlayerState> leaderBoardScores;
 
     /**
      * Creates a Leaderboard
@@ -28,50 +29,58 @@ public class LeaderBoard extends ScoresList {
     public LeaderBoard() {
         setAlignment(Pos.CENTER);
         setSpacing(5);
+        visibleRows = 8;
 
         leaderBoardScores = new SimpleListProperty<>();
-        leaderBoardScores.addListener((ListChangeListener.Change<? extends Pair<Pair<String, String>, String>> change) -> updateUI());
+        leaderBoardScores.addListener((ListChangeListener.Change<? extends PlayerState> change) -> updateUI());
     }
 
     /**
-     * Update the UI rendering of the leaderboard
+     * Gets the entries this leaderboard displays
+     * @return list of players
      */
-    private void updateUI() {
-        logger.info("Updating UI leaderboard");
-        Platform.runLater(() -> {
-            getChildren().clear();
+    protected List<?> getEntries() {
+        return leaderBoardScores;
+    }
 
-            //Pair <Pair<String, String>, String>
-            //Name (Score:Lives)
-            
-            for (Pair<Pair<String, String>, String> player : leaderBoardScores) {
-                var name = player.getKey().getKey();
-                var score = player.getKey().getValue();
-                var lives = player.getValue();
+    /**
+     * Update a single row of the leaderboard
+     * @param text the row
+     * @param entry the player to show
+     * @param index the player's position on the leaderboard
+     */
+    protected void updateRow(Text text, Object entry, int index) {
+        //Name (Score:Lives)
+        var player = (PlayerState) entry;
+        var lives = player.dead() ? "DEAD" : String.valueOf(player.lives());
 
-                var text = new Text(name + " (" + score  + ":" + lives + ")");
-                text.getStyleClass().add("leaderboard");
+        text.setText(player.name() + " (" + player.score() + ":" + lives + ")");
+        text.getStyleClass().setAll("leaderboard");
 
-                if (lives.equalsIgnoreCase("DEAD")) {
-                    text.getStyleClass().add("deadscore");
-                }
+        if (player.dead()) {
+            text.getStyleClass().add("deadscore");
+        }
 
-                if ((leaderBoardScores.indexOf(player) + 1) % 15 == 0) {
-                    text.setFill(GameBlock.COLOURS[(leaderBoardScores.indexOf(player) + 2) % 15]);
-                } else {
-                    text.setFill(GameBlock.COLOURS[(leaderBoardScores.indexOf(player) + 1) % 15]);
-                }
+        text.setFill(rowColour(index));
+    }
 
-                getChildren().add(text);
-            }
-        });
+    /**
+     * Gets the colour of the row at the given position, skipping the transparent colour
+     * @param index position on the leaderboard
+     * @return colour of the row
+     */
+    protected Color rowColour(int index) {
+        if ((index + 1) % 15 == 0) {
+            return GameBlock.COLOURS[(index + 2) % 15];
+        }
+        return GameBlock.COLOURS[(index + 1) % 15];
     }
 
     /**
      * Gets the scores property for the leaderboard
      * @return ListProperty containing the scores
      */
-    public ListProperty<Pair<Pair<String, String>, String>> getLeaderBoardScores() {
+    public ListProperty<PlayerState> getLeaderBoardScores() {
         return leaderBoardScores;
     }
 }
@@ -0,0 +1,155 @@
+package uk.ac.soton.comp1206.component;
+
+import java.util.HashMap;
+import java.util.Map;
+import javafx.geometry.Pos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Text;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.BoardCodec;
+
+/**
+ * Custom UI component showing a miniature of each opponent's board in a multiplayer challenge, kept up to date from
+ * the BOARD updates they send. Must be used on the JavaFX thread.
+ */
+public class OpponentBoards extends FlowPane {
+
+    private static final Logger logger = LogManager.getLogger(OpponentBoards.class);
+
+    /**
+     * Number of columns on each board
+     */
+    private final int cols;
+
+    /**
+     * Number of rows on each board
+     */
+    private final int rows;
+
+    /**
+     * The size of each cell of a miniature board, in pixels
+     */
+    private final double cellSize;
+
+    /**
+     * Decodes every opponent's updates, reusing its buffers
+     */
+    private final BoardCodec codec;
+
+    /**
+     * Each opponent's board, by name
+     */
+    private final Map<String, MiniBoard> boards = new HashMap<>();
+
+    /**
+     * Create an empty set of opponent boards
+     * @param cols number of columns on each board
+     * @param rows number of rows on each board
+     * @param cellSize size of each cell in pixels
+     */
+    public OpponentBoards(int cols, int rows, double cellSize) {
+        this.cols = cols;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        this.codec = new BoardCodec(cols, rows);
+
+        setAlignment(Pos.CENTER);
+        setHgap(10);
+        setVgap(5);
+    }
+
+    /**
+     * Apply an update to an opponent's board, adding the board if it is the first. A badly formed first update adds
+     * nothing
+     * @param player the opponent
+     * @param data the encoded update
+     */
+    public void update(String player, String data) {
+        var board = boards.get(player);
+        var cells = board != null ? board.cells : new int[cols * rows];
+        if (!codec.decode(data, cells)) {
+            logger.warn("Badly formed board update from {}", player);
+            return;
+        }
+        if (board == null) {
+            addBoard(player, cells);
+        } else {
+            board.paint();
+        }
+    }
+
+    /**
+     * Remove an opponent's board, such as when they leave
+     * @param player the opponent
+     */
+    public void remove(String player) {
+        var board = boards.remove(player);
+        if (board != null) getChildren().remove(board.box);
+    }
+
+    /**
+     * Create a board for an opponent and show it
+     * @param player the opponent
+     * @param cells the board's first cells
+     */
+    private void addBoard(String player, int[] cells) {
+        var board = new MiniBoard(player, cells);
+        boards.put(player, board);
+        getChildren().add(board.box);
+    }
+
+    /**
+     * A single opponent's board and its name
+     */
+    private class MiniBoard {
+
+        /**
+         * The value of each cell, row by row
+         */
+        private final int[] cells;
+
+        /**
+         * The canvas the board is painted on
+         */
+        private final Canvas canvas = new Canvas(cols * cellSize, rows * cellSize);
+
+        /**
+         * Holds the canvas above the opponent's name
+         */
+        private final VBox box;
+
+        /**
+         * Create a board
+         * @param player the opponent's name, shown below the board
+         * @param cells the value of each cell, row by row
+         */
+        MiniBoard(String player, int[] cells) {
+            this.cells = cells;
+            var name = new Text(player);
+            name.getStyleClass().add("miniBoardName");
+            box = new VBox(2, canvas, name);
+            box.setAlignment(Pos.CENTER);
+            paint();
+        }
+
+        /**
+         * Paint every cell of the board
+         */
+        void paint() {
+            var gc = canvas.getGraphicsContext2D();
+            gc.setFill(Color.color(0, 0, 0, 0.4));
+            gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+            for (int cell = 0; cell < cells.length; cell++) {
+                var value = cells[cell];
+                if (value <= 0 || value >= GameBlock.COLOURS.length) continue;
+                gc.setFill(GameBlock.COLOURS[value]);
+                gc.fillRect((cell % cols) * cellSize, (cell / cols) * cellSize, cellSize - 1, cellSize - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package uk.ac.soton.comp1206.component;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.ui.GamePane;
+import uk.ac.soton.comp1206.util.Histogram;
+
+/**
+ * Toggleable overlay showing live performance figures: frame rate, frame time percentiles, GameBlock repaints, thread
+ * counts, heap usage and allocation rate.
+ *
+ * Frame times are fed into a Histogram by an AnimationTimer which only runs while the overlay is visible.
+ */
+public class PerformanceOverlay extends VBox {
+
+    private static final Logger logger = LogManager.getLogger(PerformanceOverlay.class);
+
+    /**
+     * How often the displayed figures are refreshed, in nanoseconds
+     */
+    private static final long REFRESH_INTERVAL = 500_000_000L;
+
+    /**
+     * Holds the time between consecutive pulses
+     */
+    private final Histogram frameTimes = new Histogram();
+
+    /**
+     * The text displaying the figures
+     */
+    private final Text stats = new Text();
+
+    /**
+     * Used to read the thread counts and per-thread allocations
+     */
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Used to read the heap usage
+     */
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    /**
+     * Reused buffer for enumerating live threads
+     */
+    private Thread[] threadBuffer = new Thread[64];
+
+    /**
+     * Timestamp of the previous pulse
+     */
+    private long lastFrame = 0;
+
+    /**
+     * Timestamp of the last refresh of the figures
+     */
+    private long lastRefresh = 0;
+
+    /**
+     * Number of frames since the last refresh
+     */
+    private int frames = 0;
+
+    /**
+     * Total GameBlock repaints at the last refresh
+     */
+    private long lastRepaints = 0;
+
+    /**
+     * Bytes allocated by each live thread at the last refresh, by thread id. Threads that have died since are left
+     * out of the next total, rather than their allocations being taken away from it
+     */
+    private Map<Long, Long> lastAllocated = new HashMap<>();
+
+    /**
+     * GamePane layout passes at the last refresh
+     */
+    private long lastLayoutPasses = 0;
+
+    /**
+     * Called on every pulse while the overlay is visible
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        public void handle(long now) {
+            frame(now);
+        }
+    };
+
+    /**
+     * Create a new hidden performance overlay
+     */
+    public PerformanceOverlay() {
+        setAlignment(Pos.TOP_LEFT);
+        setPadding(new Insets(5));
+        setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE);
+        setMouseTransparent(true);
+        getStyleClass().add("performance");
+        stats.getStyleClass().add("performance");
+        getChildren().add(stats);
+
+        setVisible(false);
+        visibleProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue) {
+                start();
+            } else {
+                timer.stop();
+            }
+        });
+    }
+
+    /**
+     * Show or hide the overlay
+     */
+    public void toggle() {
+        logger.info("Toggling performance overlay");
+        setVisible(!isVisible());
+    }
+
+    /**
+     * Reset the counters and start sampling frames
+     */
+    private void start() {
+        frameTimes.reset();
+        lastFrame = 0;
+        lastRefresh = 0;
+        frames = 0;
+        lastRepaints = GameBlock.getRepaintCount();
+        allocatedSinceLast();
+        lastLayoutPasses = layoutPasses();
+        timer.start();
+    }
+
+    /**
+     * Records the time since the previous pulse and refreshes the figures when due
+     * @param now timestamp of this pulse in nanoseconds
+     */
+    private void frame(long now) {
+        if (lastFrame != 0) {
+            frameTimes.record(now - lastFrame);
+            frames++;
+        } else {
+            lastRefresh = now;
+        }
+        lastFrame = now;
+
+        var elapsed = now - lastRefresh;
+        if (elapsed >= REFRESH_INTERVAL) {
+            refresh(elapsed / 1e9);
+            frameTimes.reset();
+            frames = 0;
+            lastRefresh = now;
+        }
+    }
+
+    /**
+     * Updates the displayed figures
+     * @param seconds seconds since the last refresh
+     */
+    private void refresh(double seconds) {
+        var repaints = GameBlock.getRepaintCount();
+        var allocated = allocatedSinceLast();
+        var layoutPasses = layoutPasses();
+        var heap = memory.getHeapMemoryUsage();
+
+        stats.setText(String.format(
+            "FPS %.0f%nFrame p50 %.1f p99 %.1f max %.1f ms%nRepaints %.0f/s  Layouts %.0f/s%nThreads %d  Timers %d%nHeap %d / %d MB  Alloc %.1f MB/s",
+            frames / seconds,
+            frameTimes.getValueAtPercentile(50) / 1e6,
+            frameTimes.getValueAtPercentile(99) / 1e6,
+            frameTimes.getMax() / 1e6,
+            (repaints - lastRepaints) / seconds,
+            (layoutPasses - lastLayoutPasses) / seconds,
+            threads.getThreadCount(),
+            countTimerThreads(),
+            heap.getUsed() >> 20,
+            heap.getCommitted() >> 20,
+            allocated / seconds / (1 << 20)));
+
+        lastRepaints = repaints;
+        lastLayoutPasses = layoutPasses;
+    }
+
+    /**
+     * Counts the live java.util.Timer threads
+     * @return number of timer threads
+     */
+    private int countTimerThreads() {
+        var count = Thread.enumerate(threadBuffer);
+        if (count == threadBuffer.length) {
+            threadBuffer = new Thread[count * 2];
+            count = Thread.enumerate(threadBuffer);
+        }
+
+        var timers = 0;
+        for (int i = 0; i < count; i++) {
+            if (threadBuffer[i].getName().startsWith("Timer-")) timers++;
+            threadBuffer[i] = null;
+        }
+        return timers;
+    }
+
+    /**
+     * Gets the bytes allocated by the live threads since the last call, counting the whole of any thread started since
+     * @return bytes allocated, or 0 if not supported
+     */
+    private long allocatedSinceLast() {
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return 0;
+
+        var ids = threads.getAllThreadIds();
+        var allocated = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> current = new HashMap<>();
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            //Negative if the thread died after its id was read
+            if (allocated[i] < 0) continue;
+            current.put(ids[i], allocated[i]);
+            total += allocated[i] - lastAllocated.getOrDefault(ids[i], 0L);
+        }
+        lastAllocated = current;
+        return total;
+    }
+
+    /**
+     * Gets the layout passes of the GamePane this overlay is shown in
+     * @return layout passes, or 0 if not inside a GamePane
+     */
+    private long layoutPasses() {
+        if (getParent() instanceof GamePane pane) {
+            return pane.getLayoutPasses();
+        }
+        return 0;
+    }
+}
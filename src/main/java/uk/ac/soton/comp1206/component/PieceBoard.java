@@ -1,5 +1,6 @@
 package uk.ac.soton.comp1206.component;
 
+import java.util.BitSet;
 import javafx.scene.input.MouseEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,6 +14,11 @@ import uk.ac.soton.comp1206.game.Grid;
 public class PieceBoard extends GameBoard {
     private static final Logger logger = LogManager.getLogger(PieceBoard.class);
 
+    /**
+     * Whether the indicator circle should be shown on the middle block
+     */
+    private boolean showIndicator = false;
+
     /**
      * Makes a new PieceBoard for showing upcoming pieces
      *
@@ -62,6 +68,18 @@ public class PieceBoard extends GameBoard {
      * Handles painting the indicator circle on the middle block
      */
     public void paintIndicator() {
+      showIndicator = true;
       blocks[1][1].paintIndicator();
     }
+
+    /**
+     * Applies a batch of changes from the Grid, keeping the indicator circle painted on top
+     * @param changed the changed cells
+     */
+    protected void gridChanged(BitSet changed) {
+      super.gridChanged(changed);
+      if (showIndicator) {
+        blocks[1][1].paintIndicator();
+      }
+    }
 }
@@ -1,5 +1,6 @@
 package uk.ac.soton.comp1206.component;
 
+import java.util.List;
 import javafx.animation.FadeTransition;
 import javafx.application.Platform;
 import javafx.beans.property.ListProperty;
@@ -7,7 +8,9 @@ import javafx.beans.property.SimpleListProperty;
 import javafx.collections.ListChangeListener;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
 import javafx.util.Pair;
@@ -16,6 +19,10 @@ import org.apache.logging.log4j.Logger;
 
 /**
  * Custom UI component that holds the current high scores and displays them to the UI
+ *
+ * Only the rows that fit in the viewport are rendered, using a pool of Text nodes that are reused between updates.
+ * When the list changes, only rows whose entry changed are touched, and at most one update is made per pulse.
+ * Scrolling over the list moves the viewport through the rest of the entries.
  */
 public class ScoresList extends VBox {
     private static final Logger logger = LogManager.getLogger(ScoresList.class);
@@ -25,6 +32,26 @@ public class ScoresList extends VBox {
      */
     protected ListProperty<Pair<String, Integer>> scores;
 
+    /**
+     * The maximum number of rows rendered at once
+     */
+    protected int visibleRows = 10;
+
+    /**
+     * Index of the entry shown in the first row
+     */
+    protected int firstRow = 0;
+
+    /**
+     * Index of the entry shown in the first row at the last update
+     */
+    private int renderedFirstRow = 0;
+
+    /**
+     * Whether an update of the rows is already queued for the next pulse
+     */
+    private volatile boolean updatePending = false;
+
     /**
      * Creates a new UI element to hold and display the scores
      */
@@ -35,48 +62,145 @@ public class ScoresList extends VBox {
 
         scores = new SimpleListProperty<>();
         scores.addListener((ListChangeListener.Change<? extends Pair<String, Integer>> change) -> updateUI());
+
+        setOnScroll(this::scroll);
     }
 
     /**
-     * Updates the UI component with the correct scores when the list of scores changes
+     * Schedules an update of the rows for the next pulse, if one isn't already queued
      */
-    private void updateUI() {
-        logger.info("Updating UI ScoresList");
+    protected void updateUI() {
+        if (updatePending) return;
+        updatePending = true;
+
         Platform.runLater(() -> {
-            getChildren().clear();
-
-            for (int i = 0; i < Math.min(10, scores.size()); i++) {
-                var label = new Text(scores.get(i).getKey() + ": " + scores.get(i).getValue());
-                label.setOpacity(0);
-                label.getStyleClass().add("scorelist");
-                label.setFill(GameBlock.COLOURS[i+1]);
-                if (scores.get(i).getKey().equalsIgnoreCase("David")) {
-                    label.getStyleClass().add("myscore");
-                }
-                getChildren().add(label);
-            }
+            updatePending = false;
+            renderRows(getEntries());
         });
-        reveal();
+    }
+
+    /**
+     * Gets the entries this list displays
+     * @return list of entries
+     */
+    protected List<?> getEntries() {
+        return scores;
+    }
+
+    /**
+     * Brings the pooled rows in line with the visible window of the given entries. New rows fade in, existing rows
+     * are only changed when the entry they show has changed.
+     * @param entries every entry in the list
+     */
+    protected void renderRows(List<?> entries) {
+        var size = entries == null ? 0 : entries.size();
+        firstRow = Math.max(0, Math.min(firstRow, size - visibleRows));
+        var count = Math.min(visibleRows, size - firstRow);
+        var children = getChildren();
+
+        //Drop rows no longer needed
+        if (children.size() > count) {
+            children.remove(count, children.size());
+        }
+
+        //Create any extra rows needed
+        var firstNew = children.size();
+        while (children.size() < count) {
+            var label = new Text();
+            label.setOpacity(0);
+            children.add(label);
+        }
+
+        for (int i = 0; i < count; i++) {
+            var label = (Text) children.get(i);
+            var index = firstRow + i;
+            var entry = entries.get(index);
+
+            //Only touch rows that are showing something different
+            if (firstRow != renderedFirstRow || !entry.equals(label.getUserData())) {
+                label.setUserData(entry);
+                updateRow(label, entry, index);
+            }
+        }
+        renderedFirstRow = firstRow;
+
+        if (firstNew < count) {
+            reveal(firstNew);
+        }
+    }
+
+    /**
+     * Updates a single row to display the given entry
+     * @param label the row
+     * @param entry the entry to show
+     * @param index the position of the entry in the list
+     */
+    @SuppressWarnings("unchecked")
+    protected void updateRow(Text label, Object entry, int index) {
+        var score = (Pair<String, Integer>) entry;
+        label.setText(score.getKey() + ": " + score.getValue());
+        label.getStyleClass().setAll("scorelist");
+        label.setFill(rowColour(index));
+        if (score.getKey().equalsIgnoreCase("David")) {
+            label.getStyleClass().add("myscore");
+        }
+    }
+
+    /**
+     * Gets the colour of the row at the given position in the list
+     * @param index position in the list
+     * @return colour of the row
+     */
+    protected Color rowColour(int index) {
+        return GameBlock.COLOURS[index % (GameBlock.COLOURS.length - 1) + 1];
+    }
+
+    /**
+     * Moves the visible window when the list is scrolled
+     * @param event scroll event
+     */
+    private void scroll(ScrollEvent event) {
+        var entries = getEntries();
+        if (entries == null || entries.size() <= visibleRows || event.getDeltaY() == 0) return;
+
+        firstRow += event.getDeltaY() > 0 ? -1 : 1;
+        event.consume();
+        updateUI();
     }
 
     /**
      * Animates the scores display
      */
     public void reveal() {
+        reveal(0);
+    }
+
+    /**
+     * Animates the display of every row from the given row onwards
+     * @param from first row to animate
+     */
+    private void reveal(int from) {
         logger.info("Revealing scores");
-        Platform.runLater(() -> {
-            // Iterate through each label in the VBox and apply a fade-in animation
-            for (int i = 0; i < getChildren().size(); i++) {
-                var label = getChildren().get(i);
-
-                // Create a fade transition to gradually reveal the label
-                FadeTransition fadeTransition = new FadeTransition(Duration.seconds(1), label);
-                fadeTransition.setToValue(1); // Set final opacity to 1
-                fadeTransition.setDelay(Duration.seconds(i * 0.1)); // Delay each label's animation
-                fadeTransition.play();
-                label.setOpacity(1);
-            }
-        });
+        // Iterate through each new label in the VBox and apply a fade-in animation
+        for (int i = from; i < getChildren().size(); i++) {
+            var label = getChildren().get(i);
+
+            // Create a fade transition to gradually reveal the label
+            FadeTransition fadeTransition = new FadeTransition(Duration.seconds(1), label);
+            fadeTransition.setFromValue(0);
+            fadeTransition.setToValue(1); // Set final opacity to 1
+            fadeTransition.setDelay(Duration.seconds((i - from) * 0.1)); // Delay each label's animation
+            fadeTransition.play();
+        }
+    }
+
+    /**
+     * Sets the maximum number of rows rendered at once
+     * @param visibleRows number of rows
+     */
+    public void setVisibleRows(int visibleRows) {
+        this.visibleRows = visibleRows;
+        updateUI();
     }
 
     /**
@@ -0,0 +1,16 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.network.Communicator.State;
+
+/**
+ * The Connection Listener is used for listening to the Communicator's connection to the server being made, lost and
+ * restored. It is called on the Communicator's own threads.
+ */
+public interface ConnectionListener {
+
+    /**
+     * Handle the connection changing state
+     * @param state the new state
+     */
+    public void connectionChanged(State state);
+}
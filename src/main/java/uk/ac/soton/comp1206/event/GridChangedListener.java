@@ -0,0 +1,15 @@
+package uk.ac.soton.comp1206.event;
+
+import java.util.BitSet;
+
+/**
+ * Used to handle a batch of changes made to a Grid. Called at most once per pulse on the JavaFX thread
+ */
+public interface GridChangedListener {
+
+    /**
+     * Handle the cells of the grid that changed since the last call
+     * @param changed the changed cells, where cell (x, y) is stored at index y * cols + x
+     */
+    public void gridChanged(BitSet changed);
+}
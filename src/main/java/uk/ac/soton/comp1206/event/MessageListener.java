@@ -0,0 +1,15 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.network.ProtocolMessage;
+
+/**
+ * The Message Listener is used for listening to typed messages decoded by the Communicator.
+ */
+public interface MessageListener {
+
+    /**
+     * Handle an incoming message decoded by the Communicator
+     * @param message the decoded message
+     */
+    public void receiveMessage(ProtocolMessage message);
+}
@@ -0,0 +1,13 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * Used to handle a batch of chat messages being added to a ChatLog. Called on the JavaFX thread
+ */
+public interface MessagesAddedListener {
+
+    /**
+     * Handle new messages being added to the chat log
+     * @param count the number of messages added in this batch
+     */
+    public void messagesAdded(int count);
+}
@@ -0,0 +1,13 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * Used to handle a game asking for more pieces to be fetched from the server
+ */
+public interface PieceRequestListener {
+
+    /**
+     * Handle a request for more pieces
+     * @param count the number of pieces to request
+     */
+    public void requestPieces(int count);
+}
@@ -0,0 +1,183 @@
+package uk.ac.soton.comp1206.game;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javafx.application.Platform;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.MessagesAddedListener;
+
+/**
+ * Holds the chat messages of a channel in a fixed size ring buffer, so the oldest messages are dropped once the log
+ * is full and memory use stays flat however long the session runs.
+ *
+ * Messages can be added from any thread. They are queued and moved into the log in one batch per JavaFX pulse, after
+ * which the attached MessagesAddedListener is called.
+ */
+public class ChatLog {
+
+    private static final Logger logger = LogManager.getLogger(ChatLog.class);
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
+
+    /**
+     * Default number of messages kept, can be overridden with the tetrecs.chatCapacity property
+     */
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("tetrecs.chatCapacity", 200);
+
+    /**
+     * The ring buffer of formatted messages
+     */
+    private final String[] messages;
+
+    /**
+     * Index of the oldest message in the ring buffer
+     */
+    private int head = 0;
+
+    /**
+     * Number of messages in the ring buffer
+     */
+    private int size = 0;
+
+    /**
+     * Messages waiting to be added on the next pulse
+     */
+    private final ConcurrentLinkedQueue<String> incoming = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether a batch is already queued for the next pulse
+     */
+    private final AtomicBoolean batchScheduled = new AtomicBoolean(false);
+
+    /**
+     * The minute the cached timestamp was formatted for
+     */
+    private long timestampMinute = -1;
+
+    /**
+     * The cached formatted timestamp
+     */
+    private String timestamp;
+
+    /**
+     * The listener to call when a batch of messages is added
+     */
+    private MessagesAddedListener messagesAddedListener;
+
+    /**
+     * Create a new chat log with the default capacity
+     */
+    public ChatLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new chat log keeping at most the given number of messages
+     * @param capacity maximum number of messages
+     */
+    public ChatLog(int capacity) {
+        messages = new String[Math.max(1, capacity)];
+    }
+
+    /**
+     * Add a message from a player to the log. Can be called from any thread
+     * @param player the player who sent the message
+     * @param message the message
+     */
+    public void add(String player, String message) {
+        incoming.add(String.format("[%s] <%s>: %s", getTimestamp(), player, message));
+
+        if (batchScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::addBatch);
+        }
+    }
+
+    /**
+     * Moves every queued message into the ring buffer and notifies the listener. Runs on the JavaFX thread
+     */
+    private void addBatch() {
+        batchScheduled.set(false);
+
+        var count = 0;
+        String message;
+        while ((message = incoming.poll()) != null) {
+            messages[(head + size) % messages.length] = message;
+            if (size < messages.length) {
+                size++;
+            } else {
+                head = (head + 1) % messages.length;
+            }
+            count++;
+        }
+
+        if (count > 0 && messagesAddedListener != null) {
+            messagesAddedListener.messagesAdded(count);
+        }
+    }
+
+    /**
+     * Gets the current time formatted for a message, only formatting it again once the minute changes
+     * @return formatted time
+     */
+    private synchronized String getTimestamp() {
+        var minute = System.currentTimeMillis() / 60000;
+        if (minute != timestampMinute) {
+            timestampMinute = minute;
+            timestamp = formatter.format(LocalDateTime.now());
+        }
+        return timestamp;
+    }
+
+    /**
+     * Get a message from the log
+     * @param index index of the message, where 0 is the oldest
+     * @return the message
+     */
+    public String get(int index) {
+        return messages[(head + index) % messages.length];
+    }
+
+    /**
+     * Get the number of messages in the log
+     * @return number of messages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the maximum number of messages kept
+     * @return capacity
+     */
+    public int getCapacity() {
+        return messages.length;
+    }
+
+    /**
+     * Remove every message from the log. Must be called on the JavaFX thread
+     */
+    public void clear() {
+        logger.info("Clearing chat log");
+        incoming.clear();
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = null;
+        }
+        head = 0;
+        size = 0;
+
+        if (messagesAddedListener != null) {
+            messagesAddedListener.messagesAdded(0);
+        }
+    }
+
+    /**
+     * Sets the MessagesAddedListener attached to the log
+     * @param messagesAddedListener listener
+     */
+    public void setMessagesAddedListener(MessagesAddedListener messagesAddedListener) {
+        this.messagesAddedListener = messagesAddedListener;
+    }
+}
@@ -133,14 +133,26 @@ public class Game {
         int x = gameBlock.getX();
         int y = gameBlock.getY();
 
-        boolean piecePlayed = grid.playPiece(currentPiece, x, y);
-        if (piecePlayed) {
-            nextPiece();
-            afterPiece();
+        if (playPiece(x, y)) {
             restartTimer();
         } else Multimedia.playAudio("fail.wav");
     }
 
+    /**
+     * Plays the current piece centred on the given position, if it fits, then moves on to the next piece and clears
+     * any lines. Does not touch the game timer, so can be used to drive a game without one
+     * @param x column
+     * @param y row
+     * @return true if the piece was played
+     */
+    public boolean playPiece(int x, int y) {
+        if (!grid.playPiece(currentPiece, x, y)) return false;
+
+        nextPiece();
+        afterPiece();
+        return true;
+    }
+
     /**
      * Gets the grid model inside this game representing the game state of the board
      * @return game grid model
@@ -182,8 +194,9 @@ public class Game {
      */
     protected GamePiece spawnPiece() {
         int rnd = new Random().nextInt(GamePiece.PIECES);
-        logger.info("Created {} piece", GamePiece.createPiece(rnd));
-        return GamePiece.createPiece(rnd);
+        var piece = GamePiece.createPiece(rnd);
+        logger.debug("Created {} piece", piece);
+        return piece;
     }
 
     /**
@@ -202,7 +215,7 @@ public class Game {
      * Handles the logic to clear any lines after a piece is played
      */
     public void afterPiece() {
-        logger.info("Checking for lines to clear");
+        logger.debug("Checking for lines to clear");
         int linesToClear = 0;
         HashSet<GameBlockCoordinate> blocksToClear = new HashSet<>();
 
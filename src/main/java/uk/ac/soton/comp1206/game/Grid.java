@@ -1,16 +1,18 @@
 package uk.ac.soton.comp1206.game;
 
-import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
+import java.util.BitSet;
+import javafx.application.Platform;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.GridChangedListener;
 
 /**
  * The Grid is a model which holds the state of a game board. It is made up of a set of Integer values arranged in a 2D
  * arrow, with rows and columns.
  *
- * Each value inside the Grid is an IntegerProperty can be bound to enable modification and display of the contents of
- * the grid.
+ * Changes to the Grid are recorded in a dirty set rather than pushed to the display one cell at a time. Once per
+ * JavaFX pulse the attached GridChangedListener is given every cell that changed since the last pulse, so the display
+ * is updated in a single pass on the JavaFX thread no matter which thread modified the grid.
  *
  * The Grid contains functions related to modifying the model, for example, placing a piece inside the grid.
  *
@@ -30,9 +32,29 @@ public class Grid {
     private final int rows;
 
     /**
-     * The grid is a 2D arrow with rows and columns of SimpleIntegerProperties.
+     * The grid is a 2D array with rows and columns of values
      */
-    private final SimpleIntegerProperty[][] grid;
+    private final int[][] grid;
+
+    /**
+     * Cells changed since the last pulse, indexed by y * cols + x
+     */
+    private BitSet dirty;
+
+    /**
+     * Spare set swapped in for the dirty set while a batch of changes is being published
+     */
+    private BitSet publishing;
+
+    /**
+     * Whether a publish of the dirty set is already queued on the JavaFX thread
+     */
+    private boolean publishScheduled = false;
+
+    /**
+     * The listener to call with each batch of changed cells
+     */
+    private GridChangedListener gridChangedListener;
 
     /**
      * Create a new Grid with the specified number of columns and rows and initialise them
@@ -43,35 +65,61 @@ public class Grid {
         this.cols = cols;
         this.rows = rows;
 
-        //Create the grid itself
-        grid = new SimpleIntegerProperty[cols][rows];
+        //Create the grid itself, with every block starting empty
+        grid = new int[cols][rows];
 
-        //Add a SimpleIntegerProperty to every block in the grid
-        for(var y = 0; y < rows; y++) {
-            for(var x = 0; x < cols; x++) {
-                grid[x][y] = new SimpleIntegerProperty(0);
-            }
-        }
+        dirty = new BitSet(cols * rows);
+        publishing = new BitSet(cols * rows);
     }
 
     /**
-     * Get the Integer property contained inside the grid at a given row and column index. Can be used for binding.
+     * Update the value at the given x and y index within the grid. The change is recorded and published to the
+     * GridChangedListener on the next pulse.
      * @param x column
      * @param y row
-     * @return the IntegerProperty at the given x and y in this grid
+     * @param value the new value
      */
-    public IntegerProperty getGridProperty(int x, int y) {
-        return grid[x][y];
+    public synchronized void set(int x, int y, int value) {
+        if (grid[x][y] == value) return;
+
+        grid[x][y] = value;
+        dirty.set(y * cols + x);
+
+        if (gridChangedListener != null && !publishScheduled) {
+            publishScheduled = true;
+            Platform.runLater(this::publishChanges);
+        }
     }
 
     /**
-     * Update the value at the given x and y index within the grid
-     * @param x column
-     * @param y row
-     * @param value the new value
+     * Sets the GridChangedListener attached to the Grid
+     * @param gridChangedListener listener
      */
-    public void set(int x, int y, int value) {
-        grid[x][y].set(value);
+    public synchronized void setGridChangedListener(GridChangedListener gridChangedListener) {
+        this.gridChangedListener = gridChangedListener;
+    }
+
+    /**
+     * Hands every cell changed since the last pulse to the GridChangedListener in one batch.
+     * Always runs on the JavaFX thread
+     */
+    private void publishChanges() {
+        BitSet changed;
+        GridChangedListener listener;
+
+        //Swap the sets so changes made while the listener runs are collected for the next pulse
+        synchronized (this) {
+            changed = dirty;
+            dirty = publishing;
+            publishing = changed;
+            publishScheduled = false;
+            listener = gridChangedListener;
+        }
+
+        if (listener != null && !changed.isEmpty()) {
+            listener.gridChanged(changed);
+        }
+        changed.clear();
     }
 
     /**
@@ -82,8 +130,8 @@ public class Grid {
      */
     public int get(int x, int y) {
         try {
-            //Get the value held in the property at the x and y index provided
-            return grid[x][y].get();
+            //Get the value held at the x and y index provided
+            return grid[x][y];
         } catch (ArrayIndexOutOfBoundsException e) {
             //No such index
             return -1;
@@ -114,7 +162,7 @@ public class Grid {
      * @return true if the piece can be played in the specified position
      */
     public boolean canPlayPiece(GamePiece piece, int x, int y) {
-        logger.info("Checking if piece can be played");
+        logger.debug("Checking if piece can be played");
 
         int xOffset = 1;
         int yOffset = 1;
@@ -125,7 +173,7 @@ public class Grid {
             for (int j = 0; j < 3; j++) { // Rows
                 if (piece.getBlocks()[i][j] > 0) {
                     try {
-                        if (grid[i+relativeX][j+relativeY].get() >= 1) return false;
+                        if (grid[i+relativeX][j+relativeY] >= 1) return false;
                     } catch (IndexOutOfBoundsException e) {
                         return false;
                     }
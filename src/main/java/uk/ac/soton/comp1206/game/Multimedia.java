@@ -1,10 +1,22 @@
 package uk.ac.soton.comp1206.game;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.KeyValue;
 import javafx.animation.RotateTransition;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.scene.Node;
+import javafx.scene.media.AudioClip;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import javafx.util.Duration;
@@ -18,14 +30,64 @@ public class Multimedia {
     private static final Logger logger = LogManager.getLogger(Multimedia.class);
 
     /**
-     * Stores the audio to be played
+     * The sound effects preloaded at startup
      */
-    private static MediaPlayer audioPlayer;
+    private static final String[] EFFECTS = {
+        "clear.wav", "explode.wav", "fail.wav", "intro.mp3", "level.wav", "lifegain.wav",
+        "lifelose.wav", "message.wav", "place.wav", "pling.wav", "rotate.wav", "transition.wav"
+    };
 
     /**
-     * Stores the background music
+     * The number of copies of each sound effect that can play at the same time
      */
-    private static MediaPlayer musicPlayer;
+    private static final int VOICES = 4;
+
+    /**
+     * Holds the decoded voices of each sound effect, keyed by file name
+     */
+    private static final Map<String, EffectVoices> effects = new ConcurrentHashMap<>();
+
+    /**
+     * Repeats of the same sound effect within this many milliseconds are merged into one,
+     * can be overridden with the tetrecs.audioCoalesceMs property
+     */
+    private static final long COALESCE_WINDOW = Long.getLong("tetrecs.audioCoalesceMs", 30) * 1_000_000L;
+
+    /**
+     * Sound effects waiting to be played by the audio thread
+     */
+    private static final ConcurrentLinkedQueue<String> audioRequests = new ConcurrentLinkedQueue<>();
+
+    /**
+     * When each sound effect was last played by the audio thread, in nanoseconds
+     */
+    private static final Map<String, Long> lastPlayed = new HashMap<>();
+
+    /**
+     * The thread that plays the queued sound effects
+     */
+    private static Thread audioThread;
+
+    /**
+     * How long it takes to fade between music tracks
+     */
+    private static final Duration CROSSFADE = Duration.millis(750);
+
+    /**
+     * Holds the player of every music track loaded so far, keyed by file name. Only used on the JavaFX thread
+     */
+    private static final Map<String, MediaPlayer> musicPlayers = new HashMap<>();
+
+    /**
+     * Holds the volume fades currently running. Only used on the JavaFX thread
+     */
+    private static final Map<MediaPlayer, Timeline> fades = new HashMap<>();
+
+    /**
+     * Stores the background music currently playing. Only changed on the JavaFX thread, but volatile so
+     * isMusicPlaying() can be called from any thread
+     */
+    private static volatile MediaPlayer musicPlayer;
 
     /**
      * Flag that determines whether audio can be played
@@ -33,19 +95,89 @@ public class Multimedia {
     private static BooleanProperty audioEnabled = new SimpleBooleanProperty(true);
 
     /**
-     * Handles and plays the given audio file
+     * Flag that silences all audio without disabling it, starts muted with the tetrecs.mute property
+     */
+    private static volatile boolean muted = Boolean.getBoolean("tetrecs.mute");
+
+    /**
+     * Decodes every sound effect up front on a background thread, so the first play of each has no loading delay and
+     * the JavaFX thread isn't held up decoding them. An effect played before it is decoded waits for it
+     */
+    public static void preloadEffects() {
+        if (!audioEnabled.get()) return;
+
+        var preloader = new Thread(() -> {
+            logger.info("Preloading sound effects");
+            for (String file : EFFECTS) {
+                try {
+                    getEffect(file);
+                } catch (Exception e) {
+                    logger.error("Unable to preload {}: {}", file, e.getMessage());
+                }
+            }
+            logger.info("Sound effects preloaded");
+        }, "Audio-Preload");
+        preloader.setDaemon(true);
+        preloader.start();
+    }
+
+    /**
+     * Queues the given audio file to be played by the audio thread. Returns straight away, so it is safe to call from
+     * the game logic on any thread
      * @param file the audio file
      */
     public static void playAudio(String file) {
-        if (!audioEnabled.get()) return;
+        if (muted || !audioEnabled.get()) return;
+
+        audioRequests.add(file);
+        LockSupport.unpark(getAudioThread());
+    }
+
+    /**
+     * Gets the audio thread, starting it the first time it is needed
+     * @return the audio thread
+     */
+    private static synchronized Thread getAudioThread() {
+        if (audioThread == null) {
+            audioThread = new Thread(Multimedia::audioLoop, "Audio");
+            audioThread.setDaemon(true);
+            audioThread.start();
+        }
+        return audioThread;
+    }
+
+    /**
+     * Plays queued sound effects, waiting whenever the queue is empty
+     */
+    private static void audioLoop() {
+        while (true) {
+            var file = audioRequests.poll();
+            if (file == null) {
+                LockSupport.park();
+                continue;
+            }
+
+            if (!muted && audioEnabled.get()) {
+                playQueued(file);
+            }
+        }
+    }
+
+    /**
+     * Plays a sound effect taken from the queue, unless the same sound was played within the coalescing window
+     * @param file the audio file
+     */
+    private static void playQueued(String file) {
+        var now = System.nanoTime();
+        var last = lastPlayed.get(file);
+        if (last != null && now - last < COALESCE_WINDOW) return;
+        lastPlayed.put(file, now);
 
-        String audio = Multimedia.class.getResource("/sounds/" + file).toExternalForm();
-        logger.info("Playing audio file: {}", file);
+        logger.debug("Playing audio file: {}", file);
 
         try {
-            Media play = new Media(audio);
-            audioPlayer = new MediaPlayer(play);
-            audioPlayer.play();
+            var effect = getEffect(file);
+            if (effect != null) effect.play();
         } catch (Exception e) {
             audioEnabled.set(false);
             logger.error("Something went wrong :( - audio can't be played");
@@ -53,6 +185,43 @@ public class Multimedia {
         }
     }
 
+    /**
+     * Silences or restores all audio, including the background music
+     * @param mute true to silence audio
+     */
+    public static void setMuted(boolean mute) {
+        logger.info("Audio muted: {}", mute);
+        muted = mute;
+        audioRequests.clear();
+        runOnFxThread(() -> musicPlayers.values().forEach(player -> player.setMute(mute)));
+    }
+
+    /**
+     * Checks if all audio is currently silenced
+     * @return true if muted
+     */
+    public static boolean isMuted() {
+        return muted;
+    }
+
+    /**
+     * Gets the voices of a sound effect, decoding them on first use
+     * @param file the audio file
+     * @return the voices, or null if the file doesn't exist
+     */
+    private static EffectVoices getEffect(String file) {
+        var effect = effects.get(file);
+        if (effect != null) return effect;
+
+        var resource = Multimedia.class.getResource("/sounds/" + file);
+        if (resource == null) {
+            logger.error("Audio file {} couldn't be found", file);
+            return null;
+        }
+
+        return effects.computeIfAbsent(file, key -> new EffectVoices(resource.toExternalForm()));
+    }
+
     /**
      * Continuously plays the given audio file
      * @param file audio file being looped
@@ -61,23 +230,23 @@ public class Multimedia {
     public static void playMusic(String file, boolean loop) {
         if (!audioEnabled.get()) return;
 
-        String audio = Multimedia.class.getResource("/music/" + file).toExternalForm();
-        logger.info("Playing background music: {}", file);
+        runOnFxThread(() -> {
+            var player = getMusicPlayer(file);
+            if (player == null) return;
 
-        try {
-            Media play = new Media(audio);
-            musicPlayer = new MediaPlayer(play);
-            if (loop) musicPlayer.setCycleCount(MediaPlayer.INDEFINITE); //Sets music to infinitely loop
-            musicPlayer.play();
-        } catch (Exception e) {
-            audioEnabled.set(false);
-            logger.error("Something went wrong :( - music can't be played");
-            logger.error("Disabling background music...");
-        }
+            //Already playing, e.g. returning to the menu, so carry on without a restart
+            if (player == musicPlayer && player.getStatus() == MediaPlayer.Status.PLAYING) return;
+
+            logger.info("Playing background music: {}", file);
+            player.setOnEndOfMedia(null);
+            player.setCycleCount(loop ? MediaPlayer.INDEFINITE : 1); //Sets music to infinitely loop
+            crossfadeTo(player);
+        });
     }
 
     /**
-     * Overloaded playMusic method that plays 2 audio files sequentially
+     * Overloaded playMusic method that plays 2 audio files sequentially. The second file is buffered while the
+     * first plays and crossfaded in as the first ends, so there is no gap between them
      * @param file1 audio file played first
      * @param file2 audio file played second
      * @param loop determines whether the 2nd audio file will loop
@@ -85,30 +254,55 @@ public class Multimedia {
     public static void playMusic(String file1, String file2, boolean loop) {
         if (!audioEnabled.get()) return;
 
-        String audio = Multimedia.class.getResource("/music/" + file1).toExternalForm();
-        logger.info("Playing background music: {}", file1);
-
-        try {
-            Media play = new Media(audio);
-            musicPlayer = new MediaPlayer(play);
-            musicPlayer.setOnEndOfMedia(() -> {
-                musicPlayer.stop();
+        runOnFxThread(() -> {
+            var first = getMusicPlayer(file1);
+            var second = getMusicPlayer(file2);
+            if (first == null) {
                 playMusic(file2, loop);
+                return;
+            }
+
+            logger.info("Playing background music: {}, then {}", file1, file2);
+            first.setCycleCount(1);
+            crossfadeTo(first);
+            if (second == null) return;
+
+            second.setCycleCount(loop ? MediaPlayer.INDEFINITE : 1);
+            second.setOnEndOfMedia(null);
+
+            //Start the second track as the first one fades out, falling back to its end if the length is unknown
+            Runnable next = () -> {
+                if (musicPlayer == first) {
+                    logger.info("Playing background music: {}", file2);
+                    crossfadeTo(second);
+                }
+            };
+            first.setOnEndOfMedia(next);
+            first.currentTimeProperty().addListener(new ChangeListener<>() {
+                public void changed(ObservableValue<? extends Duration> observable, Duration oldTime, Duration newTime) {
+                    var total = first.getTotalDuration();
+                    if (musicPlayer != first) {
+                        first.currentTimeProperty().removeListener(this);
+                    } else if (total != null && !total.isUnknown() && newTime.greaterThanOrEqualTo(total.subtract(CROSSFADE))) {
+                        first.currentTimeProperty().removeListener(this);
+                        next.run();
+                    }
+                }
             });
-            musicPlayer.play();
-        } catch (Exception e) {
-            audioEnabled.set(false);
-            logger.error("Something went wrong :( - music can't be played");
-            logger.error("Disabling background music...");
-        }
+        });
     }
 
     /**
-     * Method that stops the current background music
+     * Method that stops the current background music. The track stays loaded so it can be started again instantly
      */
     public static void stopMusic() {
         logger.info("Stopping background music");
-        if (musicPlayer != null) musicPlayer.stop();
+        runOnFxThread(() -> {
+            if (musicPlayer != null) {
+                fadeOut(musicPlayer);
+                musicPlayer = null;
+            }
+        });
     }
 
     /**
@@ -116,11 +310,140 @@ public class Multimedia {
      * @return true if background is playing
      */
     public static boolean isMusicPlaying() {
-        logger.info("Checking if music playing");
-        if (musicPlayer != null) {
-            return !musicPlayer.isMute();
+        logger.debug("Checking if music playing");
+        return musicPlayer != null;
+    }
+
+    /**
+     * Gets the player for a music track, loading it the first time and keeping it for later
+     * @param file audio file
+     * @return the player, or null if the file doesn't exist or can't be played
+     */
+    private static MediaPlayer getMusicPlayer(String file) {
+        var player = musicPlayers.get(file);
+        if (player != null) return player;
+
+        var resource = Multimedia.class.getResource("/music/" + file);
+        if (resource == null) {
+            logger.error("Music file {} couldn't be found", file);
+            return null;
+        }
+
+        try {
+            player = new MediaPlayer(new Media(resource.toExternalForm()));
+            player.setMute(muted);
+            musicPlayers.put(file, player);
+            return player;
+        } catch (Exception e) {
+            audioEnabled.set(false);
+            logger.error("Something went wrong :( - music can't be played");
+            logger.error("Disabling background music...");
+            return null;
+        }
+    }
+
+    /**
+     * Fades out the current track, if any, while fading in the given one from the start
+     * @param player the track to play
+     */
+    private static void crossfadeTo(MediaPlayer player) {
+        if (musicPlayer != null && musicPlayer != player) {
+            fadeOut(musicPlayer);
+        }
+
+        musicPlayer = player;
+        player.setMute(muted);
+        player.setVolume(0);
+        player.seek(Duration.ZERO);
+        player.play();
+        fade(player, 1, null);
+    }
+
+    /**
+     * Fades out a track and stops it, keeping it loaded
+     * @param player the track
+     */
+    private static void fadeOut(MediaPlayer player) {
+        fade(player, 0, () -> {
+            if (player != musicPlayer) player.stop();
+        });
+    }
+
+    /**
+     * Changes the volume of a track over the crossfade duration, replacing any fade already running on it
+     * @param player the track
+     * @param volume target volume
+     * @param onFinished called when the fade completes, may be null
+     */
+    private static void fade(MediaPlayer player, double volume, Runnable onFinished) {
+        var previous = fades.remove(player);
+        if (previous != null) previous.stop();
+
+        var timeline = new Timeline(new KeyFrame(CROSSFADE, new KeyValue(player.volumeProperty(), volume)));
+        timeline.setOnFinished(e -> {
+            fades.remove(player);
+            if (onFinished != null) onFinished.run();
+        });
+        fades.put(player, timeline);
+        timeline.play();
+    }
+
+    /**
+     * Runs the given action on the JavaFX thread, straight away if already on it
+     * @param action action to run
+     */
+    private static void runOnFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
+
+    /**
+     * A fixed pool of voices for one sound effect. When every voice is busy, the voice started longest ago is stopped
+     * and reused
+     */
+    private static class EffectVoices {
+
+        /**
+         * The decoded copies of the sound
+         */
+        private final AudioClip[] voices = new AudioClip[VOICES];
+
+        /**
+         * Index of the voice to steal next if they are all playing
+         */
+        private int next = 0;
+
+        /**
+         * Decodes the voices for the given sound
+         * @param source URL of the sound
+         */
+        private EffectVoices(String source) {
+            for (int i = 0; i < VOICES; i++) {
+                voices[i] = new AudioClip(source);
+            }
+        }
+
+        /**
+         * Plays the sound on a free voice, or steals the oldest voice if none are free
+         */
+        private synchronized void play() {
+            var voice = voices[next];
+            for (int i = 0; i < VOICES; i++) {
+                var candidate = (next + i) % VOICES;
+                if (!voices[candidate].isPlaying()) {
+                    voice = voices[candidate];
+                    next = candidate;
+                    break;
+                }
+            }
+
+            voice.stop();
+            voice.play();
+            next = (next + 1) % VOICES;
         }
-        return false;
     }
 
     /**
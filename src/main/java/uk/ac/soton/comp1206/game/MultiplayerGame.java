@@ -1,30 +1,55 @@
 package uk.ac.soton.comp1206.game;
 
-import java.util.LinkedList;
-import java.util.Queue;
-import javafx.beans.property.ListProperty;
-import javafx.beans.property.SimpleListProperty;
-import javafx.collections.ObservableList;
-import javafx.util.Pair;
+import java.util.Random;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.PieceRequestListener;
 
 /**
  * The MultiplayerGame extends the base Game and implements a queue that the players get their next pieces from
+ *
+ * Pieces are prefetched from the server to keep a fixed number waiting in the queue. Every time a piece is used, only
+ * the shortfall is requested, so the amount of network traffic follows how quickly pieces are played.
  */
 public class MultiplayerGame extends Game {
 
     private static final Logger logger = LogManager.getLogger(MultiplayerGame.class);
 
     /**
-     * Holds the queue of pieces to be given to players
+     * The number of pieces to keep waiting in the queue
      */
-    Queue<GamePiece> pieceQueue;
+    public static final int LOOKAHEAD = 8;
 
     /**
-     * Holds every player's scores for the current game
+     * Holds the queue of piece numbers to be given to players, as a ring buffer. Room for the lookahead, the requests
+     * outstanding when the connection was lost, and the requests made again after, in case they all arrive
      */
-    private ListProperty<Pair<Pair<String, String>, String>> playerScores;
+    private final int[] pieceQueue = new int[LOOKAHEAD * 3];
+
+    /**
+     * Index of the next piece in the queue
+     */
+    private int head = 0;
+
+    /**
+     * Number of pieces in the queue
+     */
+    private int queuedPieces = 0;
+
+    /**
+     * Number of pieces requested but not yet received
+     */
+    private int requestedPieces = 0;
+
+    /**
+     * The listener to call when more pieces need to be fetched
+     */
+    private PieceRequestListener pieceRequestListener;
+
+    /**
+     * Holds every player's score and lives for the current game
+     */
+    private final PlayerStandings standings = new PlayerStandings();
 
     /**
      * Creates a new game with the specified rows and columns. Creates a corresponding grid model.
@@ -34,24 +59,85 @@ public class MultiplayerGame extends Game {
      */
     public MultiplayerGame(int cols, int rows) {
         super(cols, rows);
-        playerScores = new SimpleListProperty<>();
-        pieceQueue = new LinkedList<>();
     }
 
     /**
-     * Add a game piece to the queue
-     * @param piece game piece
+     * Add a piece received from the server to the queue
+     * @param piece piece number
      */
-    public void enqueuePiece(GamePiece piece) {
-        pieceQueue.add(piece);
+    public synchronized void enqueuePiece(int piece) {
+        requestedPieces = Math.max(0, requestedPieces - 1);
+
+        if (queuedPieces == pieceQueue.length) {
+            logger.warn("Piece queue full, dropping piece {}", piece);
+            return;
+        }
+
+        pieceQueue[(head + queuedPieces) % pieceQueue.length] = piece;
+        queuedPieces++;
     }
 
     /**
-     * Remove the next game piece from the queue
+     * Remove the next game piece from the queue, then request enough pieces to refill it. If the queue has run dry a
+     * random piece is used instead so the game never stalls
      * @return the next game piece
      */
     public GamePiece dequeuePiece() {
-        return pieceQueue.remove();
+        int piece;
+
+        synchronized (this) {
+            if (queuedPieces == 0) {
+                piece = -1;
+            } else {
+                piece = pieceQueue[head];
+                head = (head + 1) % pieceQueue.length;
+                queuedPieces--;
+            }
+        }
+
+        requestPieces();
+
+        if (piece < 0) {
+            logger.warn("Piece queue empty, using a random piece");
+            return GamePiece.createPiece(new Random().nextInt(GamePiece.PIECES));
+        }
+        return GamePiece.createPiece(piece);
+    }
+
+    /**
+     * Requests however many pieces are needed to bring the queue back up to the lookahead
+     */
+    public void requestPieces() {
+        int shortfall;
+
+        synchronized (this) {
+            shortfall = LOOKAHEAD - queuedPieces - requestedPieces;
+            if (shortfall <= 0 || pieceRequestListener == null) return;
+            requestedPieces += shortfall;
+        }
+
+        logger.debug("Requesting {} pieces", shortfall);
+        pieceRequestListener.requestPieces(shortfall);
+    }
+
+    /**
+     * Forget the requests still outstanding, as the connection was lost and their replies may never arrive, then
+     * request enough pieces to refill the queue
+     */
+    public void connectionLost() {
+        synchronized (this) {
+            logger.info("Connection lost with {} pieces requested", requestedPieces);
+            requestedPieces = 0;
+        }
+        requestPieces();
+    }
+
+    /**
+     * Gets the number of pieces waiting in the queue
+     * @return number of queued pieces
+     */
+    public synchronized int getQueuedPieces() {
+        return queuedPieces;
     }
 
     protected GamePiece spawnPiece() {
@@ -59,18 +145,18 @@ public class MultiplayerGame extends Game {
     }
 
     /**
-     * Sets the list of player scores
-     * @param playerScores ObservableList containing player scores
+     * Sets the PieceRequestListener attached to the game
+     * @param pieceRequestListener listener
      */
-    public void setPlayerScores(ListProperty<Pair<Pair<String, String>, String>> playerScores) {
-        this.playerScores.set(playerScores);
+    public void setPieceRequestListener(PieceRequestListener pieceRequestListener) {
+        this.pieceRequestListener = pieceRequestListener;
     }
 
     /**
-     * Gets the scores property for the game
-     * @return ObservableList containing the scores
+     * Gets every player's score and lives for the game
+     * @return the players
      */
-    public ObservableList<Pair<Pair<String, String>, String>> getPlayerScores() {
-        return playerScores.get();
+    public PlayerStandings getStandings() {
+        return standings;
     }
 }
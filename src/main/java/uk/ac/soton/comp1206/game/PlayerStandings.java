@@ -0,0 +1,156 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Holds the state of every player in a multiplayer game, looked up by name and ranked by score.
+ *
+ * The ranking is kept sorted as players change, rather than rebuilt: a player's new position is found by binary search
+ * and the player is replaced in place if their rank is unchanged, or moved otherwise. Anything watching the ranking
+ * therefore sees one change per updated player, and nothing for updates that change nothing. Must be used on the
+ * JavaFX thread.
+ */
+public class PlayerStandings {
+
+    /**
+     * Highest score first, then by name so the order is stable
+     */
+    private static final Comparator<PlayerState> RANKING =
+        Comparator.comparingInt(PlayerState::score).reversed().thenComparing(PlayerState::name);
+
+    /**
+     * Every player's current state, by name
+     */
+    private final Map<String, PlayerState> players = new HashMap<>();
+
+    /**
+     * Every player, kept in ranking order
+     */
+    private final ObservableList<PlayerState> ranking = FXCollections.observableArrayList();
+
+    /**
+     * The ranking as handed out, so only the standings change it
+     */
+    private final ObservableList<PlayerState> readOnlyRanking = FXCollections.unmodifiableObservableList(ranking);
+
+    /**
+     * Get a player's state
+     * @param name player name
+     * @return the player, or null if they aren't in the game
+     */
+    public PlayerState get(String name) {
+        return players.get(name);
+    }
+
+    /**
+     * Get every player, highest score first
+     * @return the ranking, which can be watched for changes but not modified
+     */
+    public ObservableList<PlayerState> getRanking() {
+        return readOnlyRanking;
+    }
+
+    /**
+     * Add a player, or replace their state
+     * @param player the player's state
+     */
+    public void put(PlayerState player) {
+        var previous = players.get(player.name());
+        if (player.equals(previous)) return;
+        players.put(player.name(), player);
+
+        if (previous != null) {
+            var index = indexOf(previous);
+            var insertAt = insertionPoint(player);
+
+            //Replace in place if the player stays between the same neighbours
+            if (insertAt == index || insertAt == index + 1) {
+                ranking.set(index, player);
+                return;
+            }
+            ranking.remove(index);
+            if (insertAt > index) insertAt--;
+            ranking.add(insertAt, player);
+        } else {
+            ranking.add(insertionPoint(player), player);
+        }
+    }
+
+    /**
+     * Update a player's score
+     * @param name player name
+     * @param score the new score
+     * @return false if the player isn't in the game
+     */
+    public boolean updateScore(String name, int score) {
+        var player = players.get(name);
+        if (player == null) return false;
+        put(player.withScore(score));
+        return true;
+    }
+
+    /**
+     * Mark a player as dead
+     * @param name player name
+     */
+    public void markDead(String name) {
+        var player = players.get(name);
+        if (player != null) put(player.asDead());
+    }
+
+    /**
+     * Replace every player with the given ones, only changing those that differ
+     * @param updated the players now in the game
+     * @return the names of the players removed, as they are no longer in the game
+     */
+    public List<String> replaceAll(Collection<PlayerState> updated) {
+        var names = new HashSet<String>();
+        for (PlayerState player : updated) names.add(player.name());
+
+        var leaving = new ArrayList<String>();
+        for (String name : players.keySet()) {
+            if (!names.contains(name)) leaving.add(name);
+        }
+        for (String name : leaving) remove(name);
+
+        for (PlayerState player : updated) put(player);
+        return leaving;
+    }
+
+    /**
+     * Remove a player
+     * @param name player name
+     */
+    public void remove(String name) {
+        var player = players.remove(name);
+        if (player != null) ranking.remove(indexOf(player));
+    }
+
+    /**
+     * Find where a player is in the ranking
+     * @param player the player's current state
+     * @return index in the ranking
+     */
+    private int indexOf(PlayerState player) {
+        return Collections.binarySearch(ranking, player, RANKING);
+    }
+
+    /**
+     * Find where a player would be inserted into the ranking
+     * @param player the player's new state
+     * @return index to insert at
+     */
+    private int insertionPoint(PlayerState player) {
+        var index = Collections.binarySearch(ranking, player, RANKING);
+        return index < 0 ? -index - 1 : index;
+    }
+}
@@ -0,0 +1,28 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The state of a single player in a multiplayer game
+ * @param name player name
+ * @param score current score
+ * @param lives remaining lives
+ * @param dead whether the player has died
+ */
+public record PlayerState(String name, int score, int lives, boolean dead) {
+
+    /**
+     * Get the same player with a new score
+     * @param score the new score
+     * @return updated state
+     */
+    public PlayerState withScore(int score) {
+        return new PlayerState(name, score, lives, dead);
+    }
+
+    /**
+     * Get the same player marked as dead
+     * @return updated state
+     */
+    public PlayerState asDead() {
+        return new PlayerState(name, score, lives, true);
+    }
+}
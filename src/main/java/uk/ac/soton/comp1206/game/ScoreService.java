@@ -0,0 +1,278 @@
+package uk.ac.soton.comp1206.game;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javafx.application.Platform;
+import javafx.util.Pair;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.util.Histogram;
+
+/**
+ * Shares the local high scores between scenes without them touching the disk. The scores are loaded once, in the
+ * background, and then served from memory. New scores are shown straight away and saved to the ScoreStore on a
+ * background I/O thread.
+ *
+ * Saves are group committed: every score waiting when the I/O thread gets to them is appended, then the log is synced
+ * once for the whole batch. However quickly scores arrive, such as from bots, there is at most one sync in progress
+ * and one batch waiting behind it.
+ */
+public class ScoreService {
+
+    private static final Logger logger = LogManager.getLogger(ScoreService.class);
+
+    /**
+     * How long to wait for scores to be saved when the game closes
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 2;
+
+    /**
+     * The scores file and the best scores read from it. Only used on the I/O thread, apart from its capacity
+     */
+    private final ScoreStore store;
+
+    /**
+     * Loads and saves the scores, in the order they were asked for
+     */
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "ScoreService-IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Completed once the scores have been loaded, or failed to load
+     */
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+    /**
+     * The best scores, highest first, including those still waiting to be saved. Replaced, never modified, and only
+     * replaced holding the service's lock
+     */
+    private volatile List<Pair<String, Integer>> scores = List.of();
+
+    /**
+     * Scores waiting to be saved. Only added to holding the service's lock, so a score is always either here or in the
+     * store when the scores are rebuilt
+     */
+    private final ConcurrentLinkedQueue<PendingScore> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether a save of the waiting scores is already queued on the I/O thread
+     */
+    private final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+
+    /**
+     * The number of scores saved and synced
+     */
+    private final LongAdder saved = new LongAdder();
+
+    /**
+     * Time from each score being submitted to it being durable, in microseconds
+     */
+    private final Histogram commitLatency = new Histogram();
+
+    /**
+     * Create a service for the scores kept in the given file
+     * @param file the scores file
+     */
+    public ScoreService(Path file) {
+        this.store = new ScoreStore(file);
+    }
+
+    /**
+     * Start loading the scores in the background
+     */
+    public void load() {
+        io.execute(() -> {
+            try {
+                store.load();
+            } catch (IOException e) {
+                logger.error("Unable to load local scores: {}", e.getMessage());
+            }
+            refreshScores();
+            loaded.complete(null);
+        });
+    }
+
+    /**
+     * Run an action on the JavaFX thread once the scores have been loaded
+     * @param action the action
+     */
+    public void whenLoaded(Runnable action) {
+        loaded.thenRun(() -> Platform.runLater(action));
+    }
+
+    /**
+     * Get whether the scores have been loaded
+     * @return true once loaded
+     */
+    public boolean isLoaded() {
+        return loaded.isDone();
+    }
+
+    /**
+     * Get the best scores
+     * @return name and score pairs, highest first
+     */
+    public List<Pair<String, Integer>> getScores() {
+        return scores;
+    }
+
+    /**
+     * Get the best score
+     * @return the best score, or 0 if there are none or they haven't loaded
+     */
+    public int getHighScore() {
+        var scores = this.scores;
+        return scores.isEmpty() ? 0 : scores.get(0).getValue();
+    }
+
+    /**
+     * Check whether a score would be one of the best
+     * @param score score
+     * @return whether it would be kept
+     */
+    public boolean isHighScore(int score) {
+        var scores = this.scores;
+        return scores.size() < store.getCapacity() || score > scores.get(scores.size() - 1).getValue();
+    }
+
+    /**
+     * Add a score. It is shown straight away and saved in the background
+     * @param name player name
+     * @param score score
+     * @return completed once the score is durable, or exceptionally if it couldn't be saved
+     */
+    public CompletableFuture<Void> submit(String name, int score) {
+        var saving = new PendingScore(name, score, System.nanoTime(), new CompletableFuture<>());
+        synchronized (this) {
+            var updated = new ArrayList<>(scores);
+            insert(updated, name, score);
+            scores = List.copyOf(updated);
+            pending.add(saving);
+        }
+
+        if (saveScheduled.compareAndSet(false, true)) io.execute(this::save);
+        return saving.durable();
+    }
+
+    /**
+     * Rebuild the best scores from the store, adding any still waiting to be saved
+     */
+    private synchronized void refreshScores() {
+        var updated = new ArrayList<>(store.getScores());
+        for (PendingScore waiting : pending) insert(updated, waiting.name(), waiting.score());
+        scores = List.copyOf(updated);
+    }
+
+    /**
+     * Insert a score into a list of the best scores, dropping the lowest if there are too many
+     * @param scores the scores, highest first
+     * @param name player name
+     * @param score score
+     */
+    private void insert(List<Pair<String, Integer>> scores, String name, int score) {
+        //Equal scores go after the ones already set, as in the store
+        var position = 0;
+        while (position < scores.size() && scores.get(position).getValue() >= score) position++;
+        scores.add(position, new Pair<>(name, score));
+        if (scores.size() > store.getCapacity()) scores.remove(scores.size() - 1);
+    }
+
+    /**
+     * Append every waiting score to the store, then sync it once for all of them
+     */
+    private void save() {
+        //Cleared first, so a score submitted while saving schedules another save
+        saveScheduled.set(false);
+
+        var batch = new ArrayList<PendingScore>();
+        PendingScore next;
+        while ((next = pending.poll()) != null) batch.add(next);
+        if (batch.isEmpty()) return;
+
+        try {
+            for (PendingScore score : batch) store.add(score.name(), score.score());
+            store.sync();
+        } catch (IOException e) {
+            logger.error("Unable to save {} local scores: {}", batch.size(), e.getMessage());
+            for (PendingScore score : batch) score.durable().completeExceptionally(e);
+            return;
+        } finally {
+            refreshScores();
+        }
+
+        var now = System.nanoTime();
+        for (PendingScore score : batch) {
+            commitLatency.record(TimeUnit.NANOSECONDS.toMicros(now - score.submitted()));
+            score.durable().complete(null);
+        }
+        saved.add(batch.size());
+    }
+
+    /**
+     * Get the number of scores saved and synced
+     * @return scores saved
+     */
+    public long getSavedCount() {
+        return saved.sum();
+    }
+
+    /**
+     * Get the number of times the scores file has been synced, which is less than the scores saved when they are
+     * batched
+     * @return syncs
+     */
+    public long getSyncCount() {
+        return store.getSyncCount();
+    }
+
+    /**
+     * Get the time from scores being submitted to them being durable
+     * @return latency histogram, in microseconds
+     */
+    public Histogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * Finish saving any scores waiting to be saved, then stop
+     */
+    public void close() {
+        io.execute(() -> {
+            save();
+            try {
+                store.close();
+            } catch (IOException e) {
+                logger.error("Unable to close scores file: {}", e.getMessage());
+            }
+        });
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Gave up waiting for scores to be saved");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A score waiting to be saved
+     * @param name player name
+     * @param score score
+     * @param submitted when it was submitted, from System.nanoTime
+     * @param durable completed once it has been saved and synced
+     */
+    private record PendingScore(String name, int score, long submitted, CompletableFuture<Void> durable) {}
+}
@@ -0,0 +1,441 @@
+package uk.ac.soton.comp1206.game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import javafx.util.Pair;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps the local high scores in a file as an append-only log of name:score lines, with the best scores held in
+ * memory in order.
+ *
+ * A new score is inserted into the in-memory top scores in O(log n) and appended to the log as a single line, rather
+ * than the whole file being rewritten. Scores that fall out of the top are left in the log until it grows long enough
+ * to be compacted, when it is rewritten with only the top scores.
+ *
+ * Each line ends with a CRC32 of the score, as name:score#checksum, so a line torn by a crash or corrupted on disk is
+ * recognised when loading. Bad lines are skipped and the log is repaired by compacting it. Compaction writes a
+ * temporary file, syncs it and moves it over the log atomically, so the log is always either the old or the new one.
+ * The directory is then synced too, so the move itself survives a power loss, on platforms that allow it. Appends are
+ * only durable once sync() is called, so a batch of scores can share one sync. Lines without a checksum, from older
+ * versions, are still read.
+ *
+ * A store holds the log open once a score is added, so it must be closed when finished with.
+ */
+public class ScoreStore implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ScoreStore.class);
+
+    /**
+     * The number of scores kept, unless given
+     */
+    public static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * How many lines the log may hold beyond the top scores before it is compacted
+     */
+    private static final int COMPACT_AFTER = 256;
+
+    /**
+     * Separates a line from its checksum
+     */
+    private static final char CHECKSUM_SEPARATOR = '#';
+
+    /**
+     * The length of the checksum and its separator at the end of a line
+     */
+    private static final int CHECKSUM_LENGTH = 9;
+
+    /**
+     * The scores written to a new file
+     */
+    private static final List<Pair<String, Integer>> DEFAULT_SCORES = List.of(
+        new Pair<>("Player1", 100),
+        new Pair<>("Player2", 90),
+        new Pair<>("Player3", 80),
+        new Pair<>("Player4", 70),
+        new Pair<>("Player5", 60),
+        new Pair<>("Player6", 50),
+        new Pair<>("Player7", 40),
+        new Pair<>("Player8", 30),
+        new Pair<>("Player9", 20),
+        new Pair<>("Player10", 10));
+
+    /**
+     * Highest score first. Equal scores keep the order they were set in
+     */
+    private static final Comparator<Entry> ORDER =
+        Comparator.comparingInt(Entry::score).reversed().thenComparingLong(Entry::sequence);
+
+    /**
+     * The log file
+     */
+    private final Path file;
+
+    /**
+     * The file a compacted log is written to before it replaces the log
+     */
+    private final Path compactFile;
+
+    /**
+     * The number of scores kept
+     */
+    private final int capacity;
+
+    /**
+     * The best scores, never more than the capacity
+     */
+    private final TreeSet<Entry> top = new TreeSet<>(ORDER);
+
+    /**
+     * The order the next score was set in, to break ties
+     */
+    private long sequence = 0;
+
+    /**
+     * The number of lines in the log
+     */
+    private int logLines = 0;
+
+    /**
+     * The number of bad lines skipped at the last load
+     */
+    private int discardedLines = 0;
+
+    /**
+     * The log, open for appending. Opened on the first append
+     */
+    private FileChannel appender;
+
+    /**
+     * Whether lines have been appended since the last sync
+     */
+    private boolean unsynced = false;
+
+    /**
+     * The number of times the log has been synced to disk
+     */
+    private long syncs = 0;
+
+    /**
+     * Create a store keeping the default number of scores
+     * @param file the log file
+     */
+    public ScoreStore(Path file) {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a store
+     * @param file the log file
+     * @param capacity the number of scores kept
+     */
+    public ScoreStore(Path file, int capacity) {
+        this.file = file;
+        this.compactFile = file.resolveSibling(file.getFileName() + ".tmp");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Read the scores from the log, creating it with the default scores if it is missing or empty
+     * @throws IOException if the log can't be read or created
+     */
+    public synchronized void load() throws IOException {
+        top.clear();
+        sequence = 0;
+        logLines = 0;
+        discardedLines = 0;
+
+        //A compaction interrupted before its move leaves the log intact, so the temporary file can go
+        Files.deleteIfExists(compactFile);
+
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            logger.info("Writing default scores");
+            for (Pair<String, Integer> score : DEFAULT_SCORES) offer(score.getKey(), score.getValue());
+            compact();
+            return;
+        }
+
+        var contents = Files.readString(file, StandardCharsets.UTF_8);
+        var unfinished = false;
+        var start = 0;
+        while (start < contents.length()) {
+            var end = contents.indexOf('\n', start);
+            if (end < 0) {
+                //The last line was never finished. Only keep it if its checksum shows it is whole
+                unfinished = true;
+                var line = contents.substring(start).strip();
+                if (!hasChecksum(line) || !parse(line)) {
+                    logger.warn("Discarding unfinished score: {}", line);
+                    discardedLines++;
+                }
+                break;
+            }
+            logLines++;
+            if (!parse(contents.substring(start, end).strip())) discardedLines++;
+            start = end + 1;
+        }
+        logger.info("Loaded {} scores from {} lines", top.size(), logLines);
+
+        if (discardedLines > 0 || unfinished) {
+            logger.warn("Repairing scores file, {} bad lines discarded", discardedLines);
+            compact();
+        } else if (logLines > capacity + COMPACT_AFTER) {
+            compact();
+        }
+    }
+
+    /**
+     * Read a line of the log into the best scores
+     * @param line the line
+     * @return false if the line is badly formed or its checksum doesn't match
+     */
+    private boolean parse(String line) {
+        if (line.isEmpty()) return true;
+
+        var record = line;
+        var separator = line.length() - CHECKSUM_LENGTH;
+        if (hasChecksum(line)) {
+            record = line.substring(0, separator);
+            try {
+                if (Long.parseLong(line, separator + 1, line.length(), 16) != checksum(record)) {
+                    logger.warn("Skipping score with bad checksum: {}", line);
+                    return false;
+                }
+            } catch (NumberFormatException e) {
+                logger.warn("Skipping score with bad checksum: {}", line);
+                return false;
+            }
+        }
+
+        var colon = record.lastIndexOf(':');
+        if (colon <= 0) {
+            logger.warn("Skipping badly formed score: {}", line);
+            return false;
+        }
+        try {
+            offer(record.substring(0, colon).trim(), Integer.parseInt(record.substring(colon + 1).trim()));
+            return true;
+        } catch (NumberFormatException e) {
+            logger.warn("Skipping badly formed score: {}", line);
+            return false;
+        }
+    }
+
+    /**
+     * Add a score, appending it to the log if it is one of the best. It isn't durable until the next sync
+     * @param name player name
+     * @param score score
+     * @return whether the score is one of the best
+     * @throws IOException if the log can't be written
+     */
+    public synchronized boolean add(String name, int score) throws IOException {
+        name = name.replace('\n', ' ').replace('\r', ' ').trim();
+        if (!offer(name, score)) return false;
+
+        if (appender == null) {
+            appender = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        }
+        var line = ByteBuffer.wrap(line(name, score).getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) appender.write(line);
+        unsynced = true;
+        logLines++;
+
+        if (logLines > capacity + COMPACT_AFTER) compact();
+        return true;
+    }
+
+    /**
+     * Make every score added so far durable, by syncing the log to disk
+     * @throws IOException if the log can't be synced
+     */
+    public synchronized void sync() throws IOException {
+        if (!unsynced) return;
+        appender.force(false);
+        unsynced = false;
+        syncs++;
+    }
+
+    /**
+     * Sync and close the log
+     * @throws IOException if the log can't be synced
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (appender == null) return;
+        try {
+            sync();
+        } finally {
+            appender.close();
+            appender = null;
+        }
+    }
+
+    /**
+     * Check whether a score would be one of the best
+     * @param score score
+     * @return whether it would be kept
+     */
+    public synchronized boolean isHighScore(int score) {
+        return top.size() < capacity || score > top.last().score();
+    }
+
+    /**
+     * Get the number of scores kept
+     * @return capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of times the log has been synced to disk
+     * @return syncs
+     */
+    public synchronized long getSyncCount() {
+        return syncs;
+    }
+
+    /**
+     * Get the number of bad lines skipped when the log was last loaded, which have since been repaired
+     * @return bad lines
+     */
+    public synchronized int getDiscardedLines() {
+        return discardedLines;
+    }
+
+    /**
+     * Get the best score
+     * @return the best score, or 0 if there are none
+     */
+    public synchronized int getHighScore() {
+        return top.isEmpty() ? 0 : top.first().score();
+    }
+
+    /**
+     * Get the best scores, highest first
+     * @return name and score pairs
+     */
+    public synchronized List<Pair<String, Integer>> getScores() {
+        var scores = new ArrayList<Pair<String, Integer>>(top.size());
+        for (Entry entry : top) scores.add(new Pair<>(entry.name(), entry.score()));
+        return scores;
+    }
+
+    /**
+     * Rewrite the log with only the best scores. The new log is written and synced alongside, then moved over the old
+     * one, so a crash part way through leaves one or the other
+     * @throws IOException if the log can't be written
+     */
+    public synchronized void compact() throws IOException {
+        var contents = new StringBuilder();
+        for (Entry entry : top) contents.append(line(entry.name(), entry.score()));
+
+        try (var channel = FileChannel.open(compactFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            var bytes = ByteBuffer.wrap(contents.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) channel.write(bytes);
+            channel.force(true);
+        }
+
+        //Appends from now on must go to the new log
+        if (appender != null) {
+            appender.close();
+            appender = null;
+        }
+        unsynced = false;
+
+        try {
+            Files.move(compactFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            logger.warn("Atomic move not supported, replacing scores file directly");
+            Files.move(compactFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory();
+
+        logger.info("Compacted {} lines of scores to {}", logLines, top.size());
+        logLines = top.size();
+    }
+
+    /**
+     * Sync the directory holding the log, so the entry for a moved file is durable. Some platforms, such as Windows,
+     * can't open a directory, in which case only a process crash is covered
+     */
+    private void syncDirectory() {
+        var directory = file.toAbsolutePath().getParent();
+        if (directory == null) return;
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Unable to sync {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Check whether a line ends with a checksum
+     * @param line the line
+     * @return true if it does
+     */
+    private static boolean hasChecksum(String line) {
+        var separator = line.length() - CHECKSUM_LENGTH;
+        return separator > 0 && line.charAt(separator) == CHECKSUM_SEPARATOR;
+    }
+
+    /**
+     * Format a line of the log, with its checksum
+     * @param name player name
+     * @param score score
+     * @return the line, ending with a newline
+     */
+    private static String line(String name, int score) {
+        var record = name + ":" + score;
+        return record + CHECKSUM_SEPARATOR + String.format("%08x", checksum(record)) + "\n";
+    }
+
+    /**
+     * Compute the checksum of a line
+     * @param record the line without its checksum
+     * @return CRC32 of the line in UTF-8
+     */
+    private static long checksum(String record) {
+        var crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Insert a score into the best scores, dropping the lowest if there are too many
+     * @param name player name
+     * @param score score
+     * @return whether the score was kept
+     */
+    private boolean offer(String name, int score) {
+        var entry = new Entry(name, score, sequence++);
+        top.add(entry);
+        if (top.size() > capacity) return top.pollLast() != entry;
+        return true;
+    }
+
+    /**
+     * A score in the store
+     * @param name player name
+     * @param score score
+     * @param sequence the order it was set in
+     */
+    private record Entry(String name, int score, long sequence) {}
+}
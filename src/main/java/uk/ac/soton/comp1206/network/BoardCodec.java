@@ -0,0 +1,219 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.Arrays;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Encodes changes to a board for the BOARD command, and decodes them again.
+ *
+ * Each update is a flags byte, a bitmask with a bit for each cell (row by row, lowest bit first), then a 4-bit colour
+ * for each cell in the mask, two to a byte. A keyframe's mask holds every filled cell, and every other cell is empty.
+ * Any other update's mask holds only the cells that changed since the last update, where colour 0 means the cell was
+ * cleared. The bytes are sent as unpadded Base64, so placing a piece on a 5x5 board costs around ten characters.
+ *
+ * Encoding and decoding reuse the codec's buffers, so only the final message string is allocated. A codec is either
+ * used to encode one board or to decode others, and isn't thread safe.
+ */
+public class BoardCodec {
+
+    /**
+     * Set in the flags byte of a keyframe
+     */
+    private static final int KEYFRAME = 1;
+
+    /**
+     * Every this many updates is a keyframe, so a board seen part way through can catch up
+     */
+    private static final int KEYFRAME_INTERVAL = 16;
+
+    /**
+     * The Base64 alphabet, indexed by value
+     */
+    private static final char[] BASE64 =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    /**
+     * The value of each Base64 character, or -1
+     */
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        for (int i = 0; i < BASE64.length; i++) BASE64_VALUES[BASE64[i]] = (byte) i;
+    }
+
+    /**
+     * Number of columns on the board
+     */
+    private final int cols;
+
+    /**
+     * Number of cells on the board
+     */
+    private final int cells;
+
+    /**
+     * The length of the bitmask, with a bit for each cell
+     */
+    private final int maskBytes;
+
+    /**
+     * The board as last encoded
+     */
+    private final int[] sent;
+
+    /**
+     * The update being encoded or decoded. Large enough for a keyframe of a full board
+     */
+    private final byte[] bytes;
+
+    /**
+     * Builds the encoded message, reused between updates
+     */
+    private final StringBuilder message = new StringBuilder();
+
+    /**
+     * The number of updates encoded since the last keyframe, or -1 if the next must be a keyframe
+     */
+    private int sinceKeyframe = -1;
+
+    /**
+     * Create a codec for boards of the given size
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public BoardCodec(int cols, int rows) {
+        this.cols = cols;
+        this.cells = cols * rows;
+        this.maskBytes = (cells + 7) / 8;
+        this.sent = new int[cells];
+        this.bytes = new byte[1 + maskBytes + (cells + 1) / 2];
+    }
+
+    /**
+     * Encode the changes to a board since it was last encoded
+     * @param grid the board
+     * @return the BOARD message, or null if nothing has changed
+     */
+    public String encode(Grid grid) {
+        var keyframe = sinceKeyframe < 0 || sinceKeyframe >= KEYFRAME_INTERVAL - 1;
+        var changed = false;
+        Arrays.fill(bytes, 0, 1 + maskBytes, (byte) 0);
+
+        var length = 1 + maskBytes;
+        var nibble = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            var value = grid.get(cell % cols, cell / cols) & 0x0F;
+            var include = keyframe ? value != 0 : value != sent[cell];
+            if (value != sent[cell]) changed = true;
+            sent[cell] = value;
+            if (!include) continue;
+
+            bytes[1 + (cell >> 3)] |= (byte) (1 << (cell & 7));
+            if ((nibble & 1) == 0) {
+                bytes[length] = (byte) value;
+            } else {
+                bytes[length++] |= (byte) (value << 4);
+            }
+            nibble++;
+        }
+        if ((nibble & 1) == 1) length++;
+
+        if (!changed && !(keyframe && sinceKeyframe < 0)) return null;
+
+        bytes[0] = (byte) (keyframe ? KEYFRAME : 0);
+        sinceKeyframe = keyframe ? 0 : sinceKeyframe + 1;
+
+        message.setLength(0);
+        message.append("BOARD ");
+        appendBase64(bytes, length, message);
+        return message.toString();
+    }
+
+    /**
+     * Make the next update a keyframe, such as after reconnecting
+     */
+    public void reset() {
+        sinceKeyframe = -1;
+    }
+
+    /**
+     * Apply an encoded update to a board
+     * @param data the encoded update, as sent after the player's name
+     * @param board the board's cells, row by row, updated in place
+     * @return false if the update was badly formed, in which case the board is unchanged
+     */
+    public boolean decode(CharSequence data, int[] board) {
+        if (board.length != cells) return false;
+        var length = decodeBase64(data, bytes);
+        if (length < 1 + maskBytes) return false;
+
+        var keyframe = (bytes[0] & KEYFRAME) != 0;
+        var nibbles = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if ((bytes[1 + (cell >> 3)] & (1 << (cell & 7))) != 0) nibbles++;
+        }
+        if (length < 1 + maskBytes + (nibbles + 1) / 2) return false;
+
+        var nibble = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if ((bytes[1 + (cell >> 3)] & (1 << (cell & 7))) != 0) {
+                var packed = bytes[1 + maskBytes + (nibble >> 1)];
+                board[cell] = (nibble & 1) == 0 ? packed & 0x0F : (packed >> 4) & 0x0F;
+                nibble++;
+            } else if (keyframe) {
+                board[cell] = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Append bytes as unpadded Base64
+     * @param source the bytes
+     * @param length how many bytes to encode
+     * @param target where to append the characters
+     */
+    private static void appendBase64(byte[] source, int length, StringBuilder target) {
+        var i = 0;
+        for (; i + 2 < length; i += 3) {
+            var block = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8 | (source[i + 2] & 0xFF);
+            target.append(BASE64[block >>> 18]).append(BASE64[(block >>> 12) & 63])
+                .append(BASE64[(block >>> 6) & 63]).append(BASE64[block & 63]);
+        }
+        if (i + 1 == length) {
+            var block = (source[i] & 0xFF) << 16;
+            target.append(BASE64[block >>> 18]).append(BASE64[(block >>> 12) & 63]);
+        } else if (i + 2 == length) {
+            var block = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8;
+            target.append(BASE64[block >>> 18]).append(BASE64[(block >>> 12) & 63]).append(BASE64[(block >>> 6) & 63]);
+        }
+    }
+
+    /**
+     * Decode unpadded Base64
+     * @param source the characters
+     * @param target where to write the bytes
+     * @return the number of bytes written, or -1 if the characters aren't valid or don't fit
+     */
+    private static int decodeBase64(CharSequence source, byte[] target) {
+        var length = 0;
+        var block = 0;
+        var bits = 0;
+        for (int i = 0; i < source.length(); i++) {
+            var c = source.charAt(i);
+            if (c == '=') break;
+            var value = c < 128 ? BASE64_VALUES[c] : -1;
+            if (value < 0) return -1;
+
+            block = (block << 6) | value;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                if (length == target.length) return -1;
+                target[length++] = (byte) (block >> bits);
+            }
+        }
+        return length;
+    }
+}
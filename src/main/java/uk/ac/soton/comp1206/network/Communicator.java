@@ -1,13 +1,31 @@
 package uk.ac.soton.comp1206.network;
 
 import com.neovisionaries.ws.client.*;
-import javafx.scene.control.Alert;
+import javafx.application.Platform;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.CommunicationsListener;
+import uk.ac.soton.comp1206.event.ConnectionListener;
+import uk.ac.soton.comp1206.event.MessageListener;
 
-import java.util.ArrayList;
+import java.net.SocketException;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Uses web sockets to talk to a web socket server and relays communication to attached listeners
@@ -18,93 +36,619 @@ public class Communicator {
 
     private static final Logger logger = LogManager.getLogger(Communicator.class);
 
+    /**
+     * Where a listener is called when a message arrives
+     */
+    public enum Delivery {
+        /**
+         * On the JavaFX application thread
+         */
+        FX,
+        /**
+         * On a background thread belonging to the listener, in the order messages arrive
+         */
+        BACKGROUND,
+        /**
+         * On the socket thread. Only for listeners that return immediately
+         */
+        INLINE
+    }
+
+    /**
+     * The state of the connection to the server
+     */
+    public enum State {
+        /**
+         * Making the first connection
+         */
+        CONNECTING,
+        /**
+         * Connected, and sending messages
+         */
+        CONNECTED,
+        /**
+         * The connection was lost or couldn't be made, and will be tried again. Messages are kept until it is restored
+         */
+        RECONNECTING,
+        /**
+         * Closed after sending QUIT, and won't be reconnected
+         */
+        CLOSED
+    }
+
+    /**
+     * The delay before the first reconnection attempt, doubled for each attempt after
+     */
+    private static final long RECONNECT_BASE_MILLIS = 250;
+
+    /**
+     * The longest delay between reconnection attempts
+     */
+    private static final long RECONNECT_MAX_MILLIS = 30_000;
+
     /**
      * Attached communication listeners listening to messages on this Communicator. Each will be sent any messages.
+     * Copy-on-write, so listeners can be added or cleared from any thread while a message is being relayed
+     */
+    private final List<Registration<CommunicationsListener>> handlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Attached message listeners. Each will be sent every message, decoded once by the Protocol codec
+     */
+    private final List<Registration<MessageListener>> messageHandlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The most messages that can be waiting to be sent before messages that a later one supersedes are shed, rather
+     * than blocking the caller. Other messages are always queued
+     */
+    private static final int MAX_QUEUED = 1024;
+
+    /**
+     * The most messages written before the socket is flushed, so they are sent together. Can be set with -Dtetrecs.batch
+     */
+    private static final int MAX_BATCH = Math.max(1, Integer.getInteger("tetrecs.batch", 32));
+
+    /**
+     * Whether to offer permessage-deflate compression to the server, set with -Dtetrecs.deflate=true
+     */
+    private static final boolean DEFLATE = Boolean.getBoolean("tetrecs.deflate");
+
+    /**
+     * The largest frame sent, with longer messages split into fragments, or 0 for no limit. Set with -Dtetrecs.maxFrame
+     */
+    private static final int MAX_FRAME = Integer.getInteger("tetrecs.maxFrame", 0);
+
+    /**
+     * Commands where only the latest message matters, so a newer message replaces one not yet sent
+     */
+    private static final Set<String> COALESCED = Set.of("SCORE", "LIVES");
+
+    /**
+     * Commands that a later message supersedes, so they can be shed when the outbox is full. Control commands and
+     * requests are never shed
+     */
+    private static final Set<String> SHEDDABLE = Set.of("SCORE", "LIVES", "BOARD");
+
+    /**
+     * Attached connection listeners, told whenever the state of the connection changes
+     */
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+
+    private volatile WebSocket ws = null;
+
+    private volatile State state = State.CONNECTING;
+
+    /**
+     * Makes the first connection attempt and schedules reconnection attempts
+     */
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "Communicator-Reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The number of failed attempts since the connection was last made
+     */
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    /**
+     * When the connection was lost, from System.nanoTime, or 0 if it hasn't been. Guarded by the in-flight lock
      */
-    private final List<CommunicationsListener> handlers = new ArrayList<>();
+    private long lostAt;
 
-    private WebSocket ws = null;
+    /**
+     * How long the last lost connection took to restore
+     */
+    private volatile long lastRecoveryMillis = -1;
 
     /**
-     * Create a new communicator to the given web socket server
+     * Counts and times the messages sent and received
+     */
+    private final NetworkMetrics metrics = new NetworkMetrics(this::getQueueDepth);
+
+    /**
+     * The channel this client is in, rejoined after reconnecting
+     */
+    private volatile String channel;
+
+    /**
+     * The nickname this client last chose, restored after reconnecting
+     */
+    private volatile String nickname;
+
+    /**
+     * Whether QUIT has been sent, so the server closing the connection is expected
+     */
+    private volatile boolean quitting;
+
+    /**
+     * Messages waiting to be written to the socket, in order
+     */
+    private final ConcurrentLinkedQueue<Outgoing> outbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of messages in the outbox
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The latest unsent message of each coalesced command
+     */
+    private final Map<String, String> latest = new ConcurrentHashMap<>();
+
+    /**
+     * Messages handed to the current socket but not yet sent by it, oldest first. If the connection is lost they are
+     * replayed. Guarded by itself, along with replay and untracked
+     */
+    private final ArrayDeque<String> inFlight = new ArrayDeque<>();
+
+    /**
+     * Messages that were in flight when the connection was lost, sent before the outbox once it is restored
+     */
+    private final ArrayDeque<String> replay = new ArrayDeque<>();
+
+    /**
+     * The number of messages restoring the session that the current socket has still to send. They are sent before
+     * anything in flight, and aren't replayed
+     */
+    private int untracked = 0;
+
+    /**
+     * The single thread writing the outbox to the socket
+     */
+    private final Thread writer;
+
+    /**
+     * Create a new communicator to the given web socket server. The connection is made in the background; messages
+     * sent before it is made are queued
      *
      * @param server server to connect to
      */
     public Communicator(String server) {
+        writer = new Thread(this::writeLoop, "Communicator-Writer");
+        writer.setDaemon(true);
+        writer.start();
 
         try {
             var socketFactory = new WebSocketFactory();
-
-            //Connect to the server
             ws = socketFactory.createSocket(server);
-            ws.connect();
-            logger.info("Connected to " + server);
-
-            //When a message is received, call the receive method
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    Communicator.this.receive(websocket, message);
-                }
-                @Override
-                public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
-                    logger.info("Ping? Pong!");
-                }
-            });
+        } catch (Exception e) {
+            logger.error("Invalid server {}: {}", server, e.getMessage());
+            setState(State.CLOSED);
+            return;
+        }
+        ws.setAutoFlush(false);
+        ws.setMaxPayloadSize(MAX_FRAME);
+        if (DEFLATE) ws.addExtension(WebSocketExtension.PERMESSAGE_DEFLATE);
 
-            //Error handling
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    if(message.startsWith("ERROR")) {
-                        logger.error(message);
-                    }
-                }
-                @Override
-                public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
-                    logger.error("Callback Error:" + throwable.getMessage());
-                    throwable.printStackTrace();
+        //When a message is received, call the receive method
+        ws.addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String message) throws Exception {
+                Communicator.this.receive(websocket, message);
+            }
+            @Override
+            public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
+                logger.debug("Ping? Pong!");
+            }
+            @Override
+            public void onFrameSent(WebSocket websocket, WebSocketFrame frame) throws Exception {
+                //The last frame of each message, which may have been split into fragments
+                if (frame.getFin() && (frame.isTextFrame() || frame.isContinuationFrame())) {
+                    Communicator.this.sent(websocket);
                 }
-                @Override
-                public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
-                    logger.error("Error:" + e.getMessage());
-                    e.printStackTrace();
+            }
+            @Override
+            public void onDisconnected(WebSocket websocket, WebSocketFrame serverCloseFrame,
+                                       WebSocketFrame clientCloseFrame, boolean closedByServer) throws Exception {
+                Communicator.this.disconnected(websocket);
+            }
+        });
+
+        //Error handling
+        ws.addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String message) throws Exception {
+                if(message.startsWith("ERROR")) {
+                    logger.error(message);
                 }
-            });
+            }
+            @Override
+            public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
+                logger.error("Callback Error: {}", throwable.getMessage());
+                throwable.printStackTrace();
+            }
+            @Override
+            public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
+                logger.error("Error: {}", e.getMessage());
+            }
+        });
 
-        } catch (Exception e){
-            logger.error("Socket error: " + e.getMessage());
-            e.printStackTrace();
+        //Connect in the background, so the caller isn't held up by DNS and the handshake
+        var socket = ws;
+        reconnector.execute(() -> connect(socket));
+    }
 
-            Alert error = new Alert(Alert.AlertType.ERROR,"Unable to communicate with the TetrECS server\n\n" + e.getMessage() + "\n\nPlease ensure you are connected to the VPN");
-            error.showAndWait();
-            System.exit(1);
+    /**
+     * Connect the given socket. If it fails, another attempt is scheduled
+     * @param socket the socket, not yet connected
+     */
+    private void connect(WebSocket socket) {
+        try {
+            socket.connect();
+            //Messages are small and batched already, so don't let Nagle's algorithm hold them for an ACK
+            socket.getSocket().setTcpNoDelay(true);
+        } catch (SocketException e) {
+            logger.warn("Unable to disable Nagle's algorithm: {}", e.getMessage());
+        } catch (WebSocketException e) {
+            logger.warn("Unable to connect to {}: {}", socket.getURI(), e.getMessage());
+            if (state == State.CONNECTING) setState(State.RECONNECTING);
+            scheduleReconnect();
+            return;
         }
+
+        synchronized (inFlight) {
+            //The socket may have dropped already, in which case the disconnect has scheduled the next attempt. The
+            //disconnect takes this lock too, so it either happened before this check or will see CONNECTED
+            if (socket != ws || !socket.isOpen() || state == State.CLOSED) {
+                logger.warn("Connection to {} lost while connecting", socket.getURI());
+                return;
+            }
+
+            //Restore the session before anything waiting in the outbox is sent
+            untracked = 0;
+            if (nickname != null) {
+                write(socket, "NICK " + nickname);
+                untracked++;
+            }
+            if (channel != null) {
+                write(socket, "JOIN " + channel);
+                untracked++;
+            }
+            socket.flush();
+
+            attempts.set(0);
+            if (lostAt != 0) {
+                lastRecoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostAt);
+                lostAt = 0;
+                metrics.reconnected();
+                logger.info("Reconnected to {} after {} ms, {} messages waiting", socket.getURI(), lastRecoveryMillis,
+                    getQueueDepth());
+            } else {
+                logger.info("Connected to {}", socket.getURI());
+            }
+            if (DEFLATE) logger.info("Extensions agreed: {}", socket.getAgreedExtensions());
+            setState(State.CONNECTED);
+        }
+        LockSupport.unpark(writer);
     }
 
-    /** Send a message to the server
+    /**
+     * Handle the socket disconnecting. Unless the client is quitting, reconnect
+     * @param socket the socket that disconnected
+     */
+    private void disconnected(WebSocket socket) {
+        if (socket != ws || state == State.CLOSED) return;
+        if (quitting) {
+            setState(State.CLOSED);
+            return;
+        }
+
+        logger.warn("Disconnected from {}", socket.getURI());
+        metrics.connectionLost();
+        synchronized (inFlight) {
+            if (lostAt == 0) lostAt = System.nanoTime();
+            //Stop the writer handing more messages to the dead socket, then keep the ones it never sent
+            setState(State.RECONNECTING);
+            while (!inFlight.isEmpty()) replay.addFirst(inFlight.pollLast());
+            untracked = 0;
+            if (!replay.isEmpty()) logger.info("{} unsent messages will be replayed", replay.size());
+        }
+        scheduleReconnect();
+    }
+
+    /**
+     * Handle a socket having sent a whole message, so it no longer needs replaying
+     * @param socket the socket
+     */
+    private void sent(WebSocket socket) {
+        synchronized (inFlight) {
+            if (socket != ws) return;
+            if (untracked > 0) {
+                untracked--;
+            } else {
+                inFlight.poll();
+            }
+        }
+    }
+
+    /**
+     * Schedule the next reconnection attempt, with exponential backoff and jitter so clients dropped together don't
+     * all reconnect together
+     */
+    private void scheduleReconnect() {
+        var attempt = attempts.getAndIncrement();
+        var ceiling = Math.min(RECONNECT_MAX_MILLIS, RECONNECT_BASE_MILLIS << Math.min(attempt, 16));
+        var delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+
+        logger.info("Reconnecting in {} ms (attempt {})", delay, attempt + 1);
+        reconnector.schedule(() -> {
+            if (state == State.CLOSED) return;
+            try {
+                ws = ws.recreate();
+            } catch (Exception e) {
+                logger.error("Unable to recreate socket: {}", e.getMessage());
+                scheduleReconnect();
+                return;
+            }
+            connect(ws);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Change the state of the connection and tell the connection listeners
+     * @param state the new state
+     */
+    private void setState(State state) {
+        if (this.state == state) return;
+        this.state = state;
+        for (ConnectionListener listener : connectionListeners) {
+            listener.connectionChanged(state);
+        }
+    }
+
+    /**
+     * Get the state of the connection to the server
+     * @return the state
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of times the connection has been restored after being lost
+     * @return reconnections
+     */
+    public long getReconnectCount() {
+        return metrics.getReconnectCount();
+    }
+
+    /**
+     * Get how long the last lost connection took to restore
+     * @return milliseconds, or -1 if the connection has never been lost
+     */
+    public long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    /**
+     * Add a new listener to be told when the connection state changes
+     * @param listener the listener to add
+     */
+    public void addConnectionListener(ConnectionListener listener) {
+        connectionListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener added with addConnectionListener
+     * @param listener the listener to remove
+     */
+    public void removeConnectionListener(ConnectionListener listener) {
+        connectionListeners.remove(listener);
+    }
+
+    /** Send a message to the server. The message is queued and written by the writer thread, so this never blocks.
+     * A queued SCORE or LIVES message is replaced by a newer one rather than both being sent. While the outbox is full,
+     * SCORE, LIVES and BOARD messages are shed and false is returned, so the caller can send the latest state again
+     * later; any other message is always queued.
      *
      * @param message Message to send
+     * @return true if the message was queued
      */
-    public void send(String message) {
-        logger.info("Sending message: " + message);
+    public boolean send(String message) {
+        var space = message.indexOf(' ');
+        var command = space < 0 ? message : message.substring(0, space);
+
+        //Remember the session so it can be restored after reconnecting
+        if (command.equals("NICK") && space > 0) nickname = message.substring(space + 1);
+        if (command.equals("QUIT")) quitting = true;
+
+        if (COALESCED.contains(command)) {
+            //Only queue a slot for the command if there isn't one waiting already
+            if (latest.put(command, message) != null) return true;
+            if (enqueue(new Outgoing(command, null))) return true;
+            latest.remove(command);
+            return false;
+        }
+        return enqueue(new Outgoing(command, message));
+    }
 
-        ws.sendText(message);
+    /**
+     * Check whether the outbox has room, so messages that can be shed will be queued
+     * @return true if the outbox isn't full
+     */
+    public boolean isWritable() {
+        return queued.get() < MAX_QUEUED;
     }
 
     /**
-     * Add a new listener to receive messages from the server
+     * Add a message to the outbox and wake the writer. If the outbox is full, a message that can be shed is dropped
+     * @param outgoing the message
+     * @return true if the message was queued
+     */
+    private boolean enqueue(Outgoing outgoing) {
+        if (queued.incrementAndGet() > MAX_QUEUED && SHEDDABLE.contains(outgoing.command())) {
+            queued.decrementAndGet();
+            logger.debug("Outbox full, shedding {} message", outgoing.command());
+            return false;
+        }
+
+        outbox.add(outgoing);
+        LockSupport.unpark(writer);
+        return true;
+    }
+
+    /**
+     * Writes queued messages to the socket in batches, flushing once per batch, and waits when there are none or
+     * while disconnected, so messages sent during an outage are sent once the connection is restored. Each message is
+     * kept in flight until the socket has sent it, so none are lost if the connection drops before then
+     */
+    private void writeLoop() {
+        while (true) {
+            if (state != State.CONNECTED) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            var ws = this.ws;
+            var written = 0;
+            while (written < MAX_BATCH) {
+                synchronized (inFlight) {
+                    //Stop if the connection was lost since the batch began, leaving the rest for the next one
+                    if (state != State.CONNECTED || ws != this.ws) break;
+                    var message = next();
+                    if (message == null) break;
+                    inFlight.add(message);
+                    write(ws, message);
+                }
+                written++;
+            }
+
+            if (written == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            ws.flush();
+        }
+    }
+
+    /**
+     * Take the next message to write, replaying any left over from a lost connection first. Called holding the
+     * in-flight lock
+     * @return the message, or null if there are none
+     */
+    private String next() {
+        if (!replay.isEmpty()) return replay.poll();
+
+        Outgoing outgoing;
+        while ((outgoing = outbox.poll()) != null) {
+            queued.decrementAndGet();
+            var message = outgoing.message() != null ? outgoing.message() : latest.remove(outgoing.command());
+            if (message != null) return message;
+        }
+        return null;
+    }
+
+    /**
+     * Write a message to the socket, without flushing it
+     * @param socket the socket
+     * @param message the message
+     */
+    private void write(WebSocket socket, String message) {
+        if (logger.isDebugEnabled()) logger.debug("Sending message: {}", message);
+        metrics.messageSent(message);
+        socket.sendText(message);
+    }
+
+    /**
+     * Get the counts and timings of the messages sent and received
+     * @return metrics
+     */
+    public NetworkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the number of messages waiting to be sent
+     * @return outbox size
+     */
+    public int getQueueDepth() {
+        synchronized (inFlight) {
+            return queued.get() + replay.size();
+        }
+    }
+
+    /**
+     * Add a new listener to receive messages from the server, called on the socket thread
      * @param listener the listener to add
      */
     public void addListener(CommunicationsListener listener) {
-        this.handlers.add(listener);
+        addListener(listener, Delivery.INLINE);
+    }
+
+    /**
+     * Add a new listener to receive messages from the server
+     * @param listener the listener to add
+     * @param delivery where the listener is called
+     */
+    public void addListener(CommunicationsListener listener, Delivery delivery) {
+        this.handlers.add(new Registration<>(listener, executor(delivery)));
     }
 
     /**
-     * Clear all current listeners
+     * Add a new listener to receive decoded messages from the server, called on the JavaFX thread
+     * @param listener the listener to add
+     */
+    public void addMessageListener(MessageListener listener) {
+        addMessageListener(listener, Delivery.FX);
+    }
+
+    /**
+     * Add a new listener to receive decoded messages from the server
+     * @param listener the listener to add
+     * @param delivery where the listener is called
+     */
+    public void addMessageListener(MessageListener listener, Delivery delivery) {
+        this.messageHandlers.add(new Registration<>(listener, executor(delivery)));
+    }
+
+    /**
+     * Clear all current listeners, stopping their background threads once any messages already handed to them are
+     * handled
      */
     public void clearListeners() {
+        for (var registration : handlers) registration.shutdown();
+        for (var registration : messageHandlers) registration.shutdown();
         this.handlers.clear();
+        this.messageHandlers.clear();
+    }
+
+    /**
+     * Create the executor that calls a listener
+     * @param delivery where the listener is called
+     * @return the executor
+     */
+    private static Executor executor(Delivery delivery) {
+        return switch (delivery) {
+            case FX -> Platform::runLater;
+            case INLINE -> Runnable::run;
+            case BACKGROUND -> Executors.newSingleThreadExecutor(runnable -> {
+                var thread = new Thread(runnable, "Communicator-Listener");
+                thread.setDaemon(true);
+                return thread;
+            });
+        };
     }
 
     /** Receive a message from the server. Relay to any attached listeners
@@ -113,11 +657,66 @@ public class Communicator {
      * @param message the message that was received
      */
     private void receive(WebSocket websocket, String message) {
-        logger.info("Received: " + message);
+        if (logger.isDebugEnabled()) logger.debug("Received: {}", message);
+        metrics.messageReceived(message);
 
-        for(CommunicationsListener handler : handlers) {
-            handler.receiveCommunication(message);
+        for (var handler : handlers) {
+            handler.dispatch(listener -> listener.receiveCommunication(message));
+        }
+
+        //Decode once here, so only the typed message is handed to other threads
+        var decoded = Protocol.decode(message);
+        if (decoded instanceof ProtocolMessage.Join join) {
+            channel = join.channel();
+        } else if (decoded instanceof ProtocolMessage.Parted) {
+            channel = null;
+        }
+
+        for (var handler : messageHandlers) {
+            handler.dispatch(listener -> listener.receiveMessage(decoded));
         }
     }
 
+    /**
+     * A listener and the executor it is called on
+     * @param listener the listener
+     * @param executor the executor calling the listener
+     * @param <T> the type of listener
+     */
+    private record Registration<T>(T listener, Executor executor) {
+
+        /**
+         * Call the listener on its executor. A listener throwing is logged, and doesn't stop other listeners
+         * @param call the call to make on the listener
+         */
+        void dispatch(Consumer<T> call) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        call.accept(listener);
+                    } catch (Exception e) {
+                        logger.error("Listener error", e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //The listener was cleared while this message was being relayed
+            }
+        }
+
+        /**
+         * Stop the listener's background thread, if it has one
+         */
+        void shutdown() {
+            if (executor instanceof ExecutorService service) service.shutdown();
+        }
+    }
+
+    /**
+     * A message waiting in the outbox. Coalesced commands have no message of their own; the latest message for the
+     * command is looked up when it is written
+     * @param command the command of the message
+     * @param message the message, or null for a coalesced command
+     */
+    private record Outgoing(String command, String message) {}
+
 }
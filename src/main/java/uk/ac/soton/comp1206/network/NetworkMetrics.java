@@ -0,0 +1,344 @@
+package uk.ac.soton.comp1206.network;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.util.Histogram;
+
+/**
+ * Counts the messages a Communicator sends and receives, by command, and times requests that have a reply. Can be
+ * registered over JMX and logged periodically.
+ *
+ * Replies are matched to requests in order: the server answers each kind of request in the order it was sent.
+ */
+public class NetworkMetrics implements NetworkMetricsMXBean {
+
+    private static final Logger logger = LogManager.getLogger(NetworkMetrics.class);
+
+    /**
+     * The name the metrics are registered under over JMX
+     */
+    public static final String OBJECT_NAME = "uk.ac.soton.comp1206:type=NetworkMetrics";
+
+    /**
+     * The requests which are timed, with the command of their reply
+     */
+    private static final Map<String, String> TIMED = Map.of(
+        "PIECE", "PIECE",
+        "HISCORES", "HISCORES",
+        "LIST", "CHANNELS");
+
+    /**
+     * The most requests waiting for a reply that are remembered. Older ones are forgotten rather than mismatched
+     */
+    private static final int MAX_PENDING = 1024;
+
+    /**
+     * Messages written to the socket, by command
+     */
+    private final Map<String, Counter> sent = new ConcurrentHashMap<>();
+
+    /**
+     * Messages received, by command
+     */
+    private final Map<String, Counter> received = new ConcurrentHashMap<>();
+
+    /**
+     * Latency of each timed request, in microseconds, by request command
+     */
+    private final Map<String, Histogram> latency = new ConcurrentHashMap<>();
+
+    /**
+     * When each timed request still waiting for a reply was written, from System.nanoTime, by reply command. Bounded,
+     * so recording a request never has to count the queue
+     */
+    private final Map<String, ArrayBlockingQueue<Long>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * The number of times the connection has been restored
+     */
+    private final LongAdder reconnects = new LongAdder();
+
+    /**
+     * Gives the number of messages waiting to be sent
+     */
+    private final IntSupplier queueDepth;
+
+    /**
+     * Create metrics for a communicator
+     * @param queueDepth gives the number of messages waiting to be sent
+     */
+    NetworkMetrics(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+        for (Map.Entry<String, String> timed : TIMED.entrySet()) {
+            latency.put(timed.getKey(), new Histogram());
+            pending.put(timed.getValue(), new ArrayBlockingQueue<>(MAX_PENDING));
+        }
+    }
+
+    /**
+     * Record a message being written to the socket
+     * @param message the message
+     */
+    void messageSent(String message) {
+        var command = command(message);
+        sent.computeIfAbsent(command, key -> new Counter()).add(message);
+
+        var reply = TIMED.get(command);
+        if (reply != null) {
+            var waiting = pending.get(reply);
+            var now = System.nanoTime();
+            //Full, so forget the oldest request
+            while (!waiting.offer(now)) waiting.poll();
+        }
+    }
+
+    /**
+     * Record a message arriving, timing it if it is the reply to a request
+     * @param message the message
+     */
+    void messageReceived(String message) {
+        var command = command(message);
+        received.computeIfAbsent(command, key -> new Counter()).add(message);
+
+        var waiting = pending.get(command);
+        if (waiting == null) return;
+        var sentAt = waiting.poll();
+        if (sentAt == null) return;
+        for (Map.Entry<String, String> timed : TIMED.entrySet()) {
+            if (timed.getValue().equals(command)) {
+                latency.get(timed.getKey()).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentAt));
+            }
+        }
+    }
+
+    /**
+     * Forget requests waiting for a reply, as they won't get one over a lost connection
+     */
+    void connectionLost() {
+        for (ArrayBlockingQueue<Long> waiting : pending.values()) waiting.clear();
+    }
+
+    /**
+     * Record the connection being restored
+     */
+    void reconnected() {
+        reconnects.increment();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return sent.values().stream().mapToLong(counter -> counter.messages.sum()).sum();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return received.values().stream().mapToLong(counter -> counter.messages.sum()).sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return sent.values().stream().mapToLong(counter -> counter.bytes.sum()).sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return received.values().stream().mapToLong(counter -> counter.bytes.sum()).sum();
+    }
+
+    @Override
+    public Map<String, Long> getSentByCommand() {
+        return snapshot(sent, counter -> counter.messages.sum());
+    }
+
+    @Override
+    public Map<String, Long> getReceivedByCommand() {
+        return snapshot(received, counter -> counter.messages.sum());
+    }
+
+    @Override
+    public Map<String, Long> getBytesSentByCommand() {
+        return snapshot(sent, counter -> counter.bytes.sum());
+    }
+
+    @Override
+    public Map<String, Long> getBytesReceivedByCommand() {
+        return snapshot(received, counter -> counter.bytes.sum());
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Millis() {
+        return latencies(histogram -> histogram.getValueAtPercentile(50) / 1000.0);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Millis() {
+        return latencies(histogram -> histogram.getValueAtPercentile(99) / 1000.0);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMaxMillis() {
+        return latencies(histogram -> histogram.getMax() / 1000.0);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public long getReconnectCount() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public void reset() {
+        sent.clear();
+        received.clear();
+        for (Histogram histogram : latency.values()) histogram.reset();
+        reconnects.reset();
+    }
+
+    /**
+     * Register the metrics with the platform MBean server, so they can be read over JMX
+     */
+    public void register() {
+        try {
+            var name = new ObjectName(OBJECT_NAME);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("Unable to register network metrics: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Log a summary of the metrics periodically, on a background thread
+     * @param seconds seconds between summaries
+     */
+    public void logEvery(long seconds) {
+        var scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "NetworkMetrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> logger.info(summary()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Summarise the metrics on one line
+     * @return summary
+     */
+    public String summary() {
+        var summary = new StringBuilder()
+            .append("Sent ").append(getMessagesSent()).append(" (").append(getBytesSent()).append(" B), ")
+            .append("received ").append(getMessagesReceived()).append(" (").append(getBytesReceived()).append(" B), ")
+            .append("queued ").append(getQueueDepth()).append(", ")
+            .append("reconnects ").append(getReconnectCount());
+
+        for (Map.Entry<String, Histogram> timed : new TreeMap<>(latency).entrySet()) {
+            var histogram = timed.getValue();
+            if (histogram.getCount() == 0) continue;
+            summary.append(String.format(", %s p50 %.1f ms p99 %.1f ms (%d)", timed.getKey(),
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getCount()));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Copy a value from each command's counter, sorted by command
+     * @param counters the counters
+     * @param value the value to copy
+     * @return the value by command
+     */
+    private static Map<String, Long> snapshot(Map<String, Counter> counters, ToLongFunction<Counter> value) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((command, counter) -> snapshot.put(command, value.applyAsLong(counter)));
+        return snapshot;
+    }
+
+    /**
+     * Read a value from each timed request's latency, sorted by command
+     * @param value reads the value from a histogram in microseconds
+     * @return the value by request command
+     */
+    private Map<String, Double> latencies(ToDoubleFunction<Histogram> value) {
+        Map<String, Double> latencies = new TreeMap<>();
+        latency.forEach((command, histogram) -> latencies.put(command, value.applyAsDouble(histogram)));
+        return latencies;
+    }
+
+    /**
+     * Get the command a message starts with
+     * @param message the message
+     * @return the command
+     */
+    private static String command(String message) {
+        for (int i = 0; i < message.length(); i++) {
+            var c = message.charAt(i);
+            if (c == ' ' || c == '\n') return message.substring(0, i);
+        }
+        return message;
+    }
+
+    /**
+     * The number and total size of messages of a single command
+     */
+    private static class Counter {
+
+        /**
+         * The number of messages
+         */
+        private final LongAdder messages = new LongAdder();
+
+        /**
+         * The total size of the messages in UTF-8
+         */
+        private final LongAdder bytes = new LongAdder();
+
+        /**
+         * Count a message
+         * @param message the message
+         */
+        void add(String message) {
+            messages.increment();
+            bytes.add(utf8Length(message));
+        }
+
+        /**
+         * Get the size of a message in UTF-8, without encoding it
+         * @param message the message
+         * @return bytes
+         */
+        private static int utf8Length(String message) {
+            var length = 0;
+            for (int i = 0; i < message.length(); i++) {
+                var c = message.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.Map;
+
+/**
+ * The management interface of the Communicator's network metrics, as seen over JMX.
+ */
+public interface NetworkMetricsMXBean {
+
+    /**
+     * Get the total number of messages written to the socket
+     * @return messages sent
+     */
+    public long getMessagesSent();
+
+    /**
+     * Get the total number of messages received
+     * @return messages received
+     */
+    public long getMessagesReceived();
+
+    /**
+     * Get the total size of the messages sent, in bytes of UTF-8
+     * @return bytes sent
+     */
+    public long getBytesSent();
+
+    /**
+     * Get the total size of the messages received, in bytes of UTF-8
+     * @return bytes received
+     */
+    public long getBytesReceived();
+
+    /**
+     * Get the number of messages sent of each command
+     * @return counts by command
+     */
+    public Map<String, Long> getSentByCommand();
+
+    /**
+     * Get the number of messages received of each command
+     * @return counts by command
+     */
+    public Map<String, Long> getReceivedByCommand();
+
+    /**
+     * Get the number of bytes sent of each command
+     * @return bytes by command
+     */
+    public Map<String, Long> getBytesSentByCommand();
+
+    /**
+     * Get the number of bytes received of each command
+     * @return bytes by command
+     */
+    public Map<String, Long> getBytesReceivedByCommand();
+
+    /**
+     * Get the median time from each timed request being written to its reply arriving
+     * @return milliseconds by request command
+     */
+    public Map<String, Double> getLatencyP50Millis();
+
+    /**
+     * Get the 99th percentile time from each timed request being written to its reply arriving
+     * @return milliseconds by request command
+     */
+    public Map<String, Double> getLatencyP99Millis();
+
+    /**
+     * Get the longest time from each timed request being written to its reply arriving
+     * @return milliseconds by request command
+     */
+    public Map<String, Double> getLatencyMaxMillis();
+
+    /**
+     * Get the number of messages waiting to be sent
+     * @return outbox size
+     */
+    public int getQueueDepth();
+
+    /**
+     * Get the number of times the connection has been restored
+     * @return reconnections
+     */
+    public long getReconnectCount();
+
+    /**
+     * Clear every counter and histogram
+     */
+    public void reset();
+}
@@ -0,0 +1,203 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.ProtocolMessage.*;
+
+/**
+ * Decodes messages from the TetrECS server into typed ProtocolMessages.
+ *
+ * The command is picked out by checking the first character and then the whole command token in place, and numbers
+ * are parsed straight out of the message, so decoding never splits or copies the message more than needed. Only the
+ * command token at the start of a message is looked at, so chat text containing a command name can't be misrouted.
+ */
+public class Protocol {
+
+    private static final Logger logger = LogManager.getLogger(Protocol.class);
+
+    /**
+     * Decode a message received from the server
+     * @param raw the message
+     * @return the typed message, or Unknown if it isn't recognised or is badly formed
+     */
+    public static ProtocolMessage decode(String raw) {
+        try {
+            var message = decodeCommand(raw);
+            if (message != null) return message;
+        } catch (RuntimeException e) {
+            logger.error("Badly formed message: {}", raw);
+        }
+        return new Unknown(raw);
+    }
+
+    /**
+     * Works out the command of a message and decodes its body
+     * @param raw the message
+     * @return the typed message, or null if the command isn't recognised
+     */
+    private static ProtocolMessage decodeCommand(String raw) {
+        if (raw.isEmpty()) return null;
+
+        switch (raw.charAt(0)) {
+            case 'B':
+                if (isCommand(raw, "BOARD")) {
+                    var colon = raw.indexOf(':', 6);
+                    return new Board(raw.substring(6, colon), raw.substring(colon + 1));
+                }
+                break;
+            case 'C':
+                if (isCommand(raw, "CHANNELS")) return new Channels(lines(raw, 8));
+                break;
+            case 'D':
+                if (isCommand(raw, "DIE")) return new Die(body(raw, 3));
+                break;
+            case 'E':
+                if (isCommand(raw, "ERROR")) return new ServerError(body(raw, 5));
+                break;
+            case 'H':
+                if (isCommand(raw, "HISCORES")) return new HiScores(namedScores(raw, 8));
+                if (isCommand(raw, "HOST")) return new Host(body(raw, 4));
+                break;
+            case 'J':
+                if (isCommand(raw, "JOIN")) return new Join(body(raw, 4));
+                break;
+            case 'M':
+                if (isCommand(raw, "MSG")) {
+                    var colon = raw.indexOf(':', 4);
+                    return new Chat(raw.substring(4, colon), raw.substring(colon + 1));
+                }
+                break;
+            case 'N':
+                if (isCommand(raw, "NICK")) {
+                    var colon = raw.indexOf(':', 5);
+                    if (colon < 0) return new Nick(null, body(raw, 4));
+                    return new Nick(raw.substring(5, colon), raw.substring(colon + 1));
+                }
+                if (isCommand(raw, "NEWSCORE")) return new NewScore(namedScore(raw, 9, raw.length()));
+                break;
+            case 'P':
+                if (isCommand(raw, "PIECE")) return new Piece(Integer.parseInt(raw, 6, raw.length(), 10));
+                if (isCommand(raw, "PARTED")) return new Parted();
+                break;
+            case 'S':
+                if (isCommand(raw, "SCORES")) return new Scores(playerScores(raw, 6));
+                if (isCommand(raw, "SCORE")) {
+                    var score = namedScore(raw, 6, raw.length());
+                    return new Score(score.name(), score.score());
+                }
+                if (isCommand(raw, "START")) return new Start();
+                break;
+            case 'U':
+                if (isCommand(raw, "USERS")) return new Users(lines(raw, 5));
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a message starts with the given command token, followed by a space or the end of the message
+     * @param raw the message
+     * @param command the command
+     * @return true if the message is of that command
+     */
+    private static boolean isCommand(String raw, String command) {
+        var length = command.length();
+        return raw.startsWith(command) && (raw.length() == length || raw.charAt(length) == ' ');
+    }
+
+    /**
+     * Gets the body of a message after its command
+     * @param raw the message
+     * @param commandLength length of the command
+     * @return the body, or an empty string if there is none
+     */
+    private static String body(String raw, int commandLength) {
+        return raw.length() > commandLength ? raw.substring(commandLength + 1) : "";
+    }
+
+    /**
+     * Splits the body of a message into its lines
+     * @param raw the message
+     * @param commandLength length of the command
+     * @return the non-empty lines
+     */
+    private static List<String> lines(String raw, int commandLength) {
+        var lines = new ArrayList<String>();
+        var start = commandLength + 1;
+        while (start < raw.length()) {
+            var end = lineEnd(raw, start);
+            if (end > start) lines.add(raw.substring(start, end));
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * Decodes a body made of name:score lines
+     * @param raw the message
+     * @param commandLength length of the command
+     * @return the scores
+     */
+    private static List<NamedScore> namedScores(String raw, int commandLength) {
+        var scores = new ArrayList<NamedScore>();
+        var start = commandLength + 1;
+        while (start < raw.length()) {
+            var end = lineEnd(raw, start);
+            if (end > start) scores.add(namedScore(raw, start, end));
+            start = end + 1;
+        }
+        return scores;
+    }
+
+    /**
+     * Decodes a body made of name:score:lives lines
+     * @param raw the message
+     * @param commandLength length of the command
+     * @return the player scores
+     */
+    private static List<PlayerScore> playerScores(String raw, int commandLength) {
+        var players = new ArrayList<PlayerScore>();
+        var start = commandLength + 1;
+        while (start < raw.length()) {
+            var end = lineEnd(raw, start);
+            if (end > start) {
+                var first = raw.indexOf(':', start);
+                var second = raw.indexOf(':', first + 1);
+                players.add(new PlayerScore(
+                    raw.substring(start, first),
+                    Integer.parseInt(raw, first + 1, second, 10),
+                    raw.substring(second + 1, end)));
+            }
+            start = end + 1;
+        }
+        return players;
+    }
+
+    /**
+     * Decodes a single name:score pair. The score is taken from after the last colon, so names may contain colons
+     * @param raw the message
+     * @param start start of the pair
+     * @param end end of the pair
+     * @return the name and score
+     */
+    private static NamedScore namedScore(String raw, int start, int end) {
+        var colon = raw.lastIndexOf(':', end - 1);
+        if (colon < start) throw new IllegalArgumentException("Missing score");
+        return new NamedScore(raw.substring(start, colon), Integer.parseInt(raw, colon + 1, end, 10));
+    }
+
+    /**
+     * Finds the end of the line starting at the given index
+     * @param raw the message
+     * @param start start of the line
+     * @return index of the newline, or the length of the message
+     */
+    private static int lineEnd(String raw, int start) {
+        var end = raw.indexOf('\n', start);
+        return end < 0 ? raw.length() : end;
+    }
+}
@@ -0,0 +1,129 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.List;
+
+/**
+ * A typed message received from the TetrECS server. Each record matches one command of the protocol and is produced
+ * by the Protocol codec
+ */
+public sealed interface ProtocolMessage {
+
+    /**
+     * The list of open channels: CHANNELS name\nname...
+     * @param channels channel names
+     */
+    record Channels(List<String> channels) implements ProtocolMessage {}
+
+    /**
+     * A channel was joined: JOIN channel
+     * @param channel channel name
+     */
+    record Join(String channel) implements ProtocolMessage {}
+
+    /**
+     * This client is the host of the channel: HOST channel
+     * @param channel channel name
+     */
+    record Host(String channel) implements ProtocolMessage {}
+
+    /**
+     * The current channel was left: PARTED
+     */
+    record Parted() implements ProtocolMessage {}
+
+    /**
+     * The users in the current channel: USERS name\nname...
+     * @param users user names
+     */
+    record Users(List<String> users) implements ProtocolMessage {}
+
+    /**
+     * A nickname change: NICK new, or NICK old:new for another user
+     * @param oldName the previous name, or null if this client's own name was set
+     * @param newName the new name
+     */
+    record Nick(String oldName, String newName) implements ProtocolMessage {}
+
+    /**
+     * A chat message: MSG player:message
+     * @param player sender
+     * @param message message text
+     */
+    record Chat(String player, String message) implements ProtocolMessage {}
+
+    /**
+     * The game in the current channel has started: START
+     */
+    record Start() implements ProtocolMessage {}
+
+    /**
+     * An error reported by the server: ERROR message
+     * @param message error text
+     */
+    record ServerError(String message) implements ProtocolMessage {}
+
+    /**
+     * A player's score changed: SCORE player:score
+     * @param player player name
+     * @param score new score
+     */
+    record Score(String player, int score) implements ProtocolMessage {}
+
+    /**
+     * Every player's score and lives: SCORES player:score:lives\n...
+     * @param players the players
+     */
+    record Scores(List<PlayerScore> players) implements ProtocolMessage {}
+
+    /**
+     * A piece for the game: PIECE value
+     * @param piece piece number
+     */
+    record Piece(int piece) implements ProtocolMessage {}
+
+    /**
+     * A change to another player's board: BOARD player:data, where data is decoded by a BoardCodec
+     * @param player player name
+     * @param data the encoded change
+     */
+    record Board(String player, String data) implements ProtocolMessage {}
+
+    /**
+     * A player died: DIE player
+     * @param player player name
+     */
+    record Die(String player) implements ProtocolMessage {}
+
+    /**
+     * The online high scores: HISCORES name:score\n...
+     * @param scores the scores
+     */
+    record HiScores(List<NamedScore> scores) implements ProtocolMessage {}
+
+    /**
+     * A new online high score was accepted: NEWSCORE name:score
+     * @param score the score
+     */
+    record NewScore(NamedScore score) implements ProtocolMessage {}
+
+    /**
+     * Any message the codec doesn't recognise
+     * @param raw the whole message
+     */
+    record Unknown(String raw) implements ProtocolMessage {}
+
+    /**
+     * One player's entry in a SCORES message
+     * @param name player name
+     * @param score score
+     * @param lives remaining lives, or DEAD
+     */
+    record PlayerScore(String name, int score, String lives) {}
+
+    /**
+     * A name and score pair
+     * @param name name
+     * @param score score
+     */
+    record NamedScore(String name, int score) {}
+}
@@ -0,0 +1,177 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.ConnectionListener;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Publishes the player's score and lives to the server at a fixed rate, rather than on every change. Only values that
+ * have changed since they were last sent are sent, so the messages sent are bounded by the rate however fast pieces
+ * are played. Call flush() to send the latest values straight away, such as when the player dies.
+ *
+ * If given the player's board, the changes to it are published alongside, encoded by a BoardCodec.
+ *
+ * While publishing, everything is sent again in full after the connection is restored, as the server may have lost it.
+ */
+public class ScorePublisher {
+
+    private static final Logger logger = LogManager.getLogger(ScorePublisher.class);
+
+    /**
+     * How many times a second to publish, unless set with -Dtetrecs.scoreRate
+     */
+    private static final double DEFAULT_RATE = 10;
+
+    /**
+     * The communicator the values are sent through
+     */
+    private final Communicator communicator;
+
+    /**
+     * The time between each publish
+     */
+    private final long periodMillis;
+
+    /**
+     * The latest score, set from any thread
+     */
+    private volatile int score;
+
+    /**
+     * The latest lives, set from any thread
+     */
+    private volatile int lives;
+
+    /**
+     * The score last sent. Only used while holding the publisher's lock
+     */
+    private int sentScore = Integer.MIN_VALUE;
+
+    /**
+     * The lives last sent. Only used while holding the publisher's lock
+     */
+    private int sentLives = Integer.MIN_VALUE;
+
+    /**
+     * The player's board, if it is published
+     */
+    private Grid board;
+
+    /**
+     * Encodes the changes to the player's board, if it is published
+     */
+    private BoardCodec boardCodec;
+
+    /**
+     * Runs the publishing while started
+     */
+    private Timer timer;
+
+    /**
+     * Resends everything once the connection is restored
+     */
+    private final ConnectionListener reconnectListener = state -> {
+        if (state == Communicator.State.CONNECTED) resend();
+    };
+
+    /**
+     * Create a publisher sending at the configured rate
+     * @param communicator communicator to send through
+     */
+    public ScorePublisher(Communicator communicator) {
+        this(communicator, Double.parseDouble(System.getProperty("tetrecs.scoreRate", String.valueOf(DEFAULT_RATE))));
+    }
+
+    /**
+     * Create a publisher
+     * @param communicator communicator to send through
+     * @param rate how many times a second to publish
+     */
+    public ScorePublisher(Communicator communicator, double rate) {
+        this.communicator = communicator;
+        this.periodMillis = Math.max(1, Math.round(1000 / rate));
+    }
+
+    /**
+     * Set the latest score, to be sent at the next publish
+     * @param score score
+     */
+    public void setScore(int score) {
+        this.score = score;
+    }
+
+    /**
+     * Set the latest lives, to be sent at the next publish
+     * @param lives lives
+     */
+    public void setLives(int lives) {
+        this.lives = lives;
+    }
+
+    /**
+     * Publish the changes to a board as well, starting with the whole board
+     * @param board the player's board
+     */
+    public synchronized void setBoard(Grid board) {
+        this.board = board;
+        this.boardCodec = new BoardCodec(board.getCols(), board.getRows());
+    }
+
+    /**
+     * Start publishing in the background
+     */
+    public synchronized void start() {
+        if (timer != null) return;
+
+        logger.info("Publishing score every {} ms", periodMillis);
+        communicator.addConnectionListener(reconnectListener);
+        timer = new Timer("ScorePublisher", true);
+        timer.scheduleAtFixedRate(new TimerTask() {
+            public void run() {
+                flush();
+            }
+        }, periodMillis, periodMillis);
+    }
+
+    /**
+     * Send any values that have changed since they were last sent
+     */
+    public synchronized void flush() {
+        var score = this.score;
+        var lives = this.lives;
+
+        //A value shed by a full outbox is left unsent, so it is tried again at the next publish
+        if (score != sentScore && communicator.send("SCORE " + score)) sentScore = score;
+        if (lives != sentLives && communicator.send("LIVES " + lives)) sentLives = lives;
+        //Board changes aren't queued while disconnected, as a keyframe is sent once the connection is restored
+        if (board != null && communicator.getState() == Communicator.State.CONNECTED) {
+            var update = boardCodec.encode(board);
+            //A shed update would leave opponents' copies wrong, so follow it with a keyframe
+            if (update != null && !communicator.send(update)) boardCodec.reset();
+        }
+    }
+
+    /**
+     * Send every value and the whole board at the next publish, such as after reconnecting
+     */
+    public synchronized void resend() {
+        sentScore = Integer.MIN_VALUE;
+        sentLives = Integer.MIN_VALUE;
+        if (boardCodec != null) boardCodec.reset();
+    }
+
+    /**
+     * Stop publishing, sending the final values first
+     */
+    public synchronized void stop() {
+        flush();
+        communicator.removeConnectionListener(reconnectListener);
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+}
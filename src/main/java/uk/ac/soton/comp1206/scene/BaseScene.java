@@ -2,6 +2,7 @@ package uk.ac.soton.comp1206.scene;
 
 import javafx.scene.Scene;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.paint.Color;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -71,8 +72,18 @@ public abstract class BaseScene {
      */
     public Scene setScene() {
         var previous = gameWindow.getScene();
+        root.setIntegerScale(Boolean.getBoolean("tetrecs.integerScale"));
+        root.getChildren().add(gameWindow.getPerformanceOverlay());
         Scene scene = new Scene(root, previous.getWidth(), previous.getHeight(), Color.BLACK);
         scene.getStylesheets().add(getClass().getResource("/style/game.css").toExternalForm());
+
+        //F3 toggles the performance overlay in every scene
+        scene.addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            if (e.getCode() == KeyCode.F3) {
+                gameWindow.getPerformanceOverlay().toggle();
+                e.consume();
+            }
+        });
         this.scene = scene;
         return scene;
     }
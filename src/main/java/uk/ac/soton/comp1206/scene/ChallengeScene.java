@@ -2,10 +2,6 @@ package uk.ac.soton.comp1206.scene;
 
 import static java.lang.Integer.parseInt;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Timer;
@@ -482,17 +478,16 @@ public class ChallengeScene extends BaseScene {
      * Gets the highest local score and displays it in the UI
      */
     public void getHighScore() {
-        try{
-            var reader = new BufferedReader(new FileReader("scores.txt"));
-            var hiScore = reader.readLine();
-            var score = hiScore.split(":")[1]; //Name:Score
-            hiScoreNumber = new Text(String.format("%d", parseInt(score)));
-        } catch (FileNotFoundException e) {
-            logger.error("Scores file couldn't be found");
-            hiScoreNumber = new Text("0");
-        } catch (IOException e) {
-            logger.error("Something went wrong trying to read the scores file");
-            hiScoreNumber = new Text("0");
+        var scoreService = gameWindow.getScoreService();
+        hiScoreNumber = new Text(String.format("%d", scoreService.getHighScore()));
+
+        //If the scores are still loading, show the high score once they have, unless it has been beaten already
+        if (!scoreService.isLoaded()) {
+            scoreService.whenLoaded(() -> {
+                if (scoreService.getHighScore() > parseInt(hiScoreNumber.getText())) {
+                    hiScoreNumber.setText(String.valueOf(scoreService.getHighScore()));
+                }
+            });
         }
     }
 
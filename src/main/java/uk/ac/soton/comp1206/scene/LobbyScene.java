@@ -1,14 +1,14 @@
 package uk.ac.soton.comp1206.scene;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
@@ -23,36 +23,66 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import uk.ac.soton.comp1206.event.CommunicationsListener;
+import uk.ac.soton.comp1206.component.ChatView;
+import uk.ac.soton.comp1206.event.MessageListener;
+import uk.ac.soton.comp1206.game.ChatLog;
 import uk.ac.soton.comp1206.game.Multimedia;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Communicator.Delivery;
+import uk.ac.soton.comp1206.network.ProtocolMessage;
+import uk.ac.soton.comp1206.network.ProtocolMessage.*;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
+import uk.ac.soton.comp1206.util.AdaptiveRefresh;
 
 /**
  * The LobbyScene is the gateway to the multiplayer challenge. Players can create/join channels and send messages within those channels.
  * The host of each channel can start a new multiplayer game
+ *
+ * The channel list is refreshed often while it is changing and the window is focused, and less often otherwise. It is
+ * refreshed straight away after the player joins or leaves a channel. Channel and user lists are compared with what is
+ * shown, so only the entries that were added or removed change the scene.
  */
 public class LobbyScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(LobbyScene.class);
 
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-
     /**
      * Listener that handles incoming messages from the Communicator
      */
-    private CommunicationsListener listener;
+    private MessageListener listener;
+
+    /**
+     * The shortest and longest times between requests for the channel list
+     */
+    private static final long MIN_REFRESH_MILLIS = 2000;
+    private static final long MAX_REFRESH_MILLIS = 30000;
 
     /**
-     * Timer used to periodically request the channel list from the Communicator
+     * Requests the channel list from the Communicator, backing off while nothing changes
      */
-    private Timer timer;
+    private final AdaptiveRefresh refresh;
+
+    /**
+     * Refreshes often only while the window is focused
+     */
+    private final ChangeListener<Boolean> focusListener;
 
     /**
      * Holds the list of channels
      */
     private VBox channelList;
 
+    /**
+     * The row shown for each channel, in the order shown
+     */
+    private final Map<String, Text> channelRows = new LinkedHashMap<>();
+
+    /**
+     * The entry shown for each user in the current channel, in the order shown
+     */
+    private final Map<String, Text> userRows = new LinkedHashMap<>();
+
     /**
      * TextField to allow the user to enter the new channel name
      */
@@ -78,15 +108,10 @@ public class LobbyScene extends BaseScene {
      */
     private HBox usersList;
 
-    /**
-     * Holds the message ScrollPane
-     */
-    private ScrollPane messageScroller;
-
     /**
      * Holds all the messages in the channel
      */
-    private VBox messageBox;
+    private final ChatLog chatLog = new ChatLog();
 
     /**
      * Create a new scene, passing in the GameWindow the scene will be displayed in
@@ -100,17 +125,13 @@ public class LobbyScene extends BaseScene {
 
         setListener(this::handleResponses);
 
-        timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            public void run() {
-                gameWindow.getCommunicator().send("LIST");
-            }
-        }, 0, 5000);
+        refresh = new AdaptiveRefresh("Lobby-Refresh", this::requestChannels, MIN_REFRESH_MILLIS, MAX_REFRESH_MILLIS);
+        focusListener = (observable, wasFocused, focused) -> refresh.setActive(focused);
     }
 
     public void build() {
         logger.info("Building " + this.getClass().getName());
-        gameWindow.getCommunicator().addListener(listener);
+        gameWindow.getCommunicator().addMessageListener(listener, Delivery.BACKGROUND);
 
         root = new GamePane(gameWindow.getWidth(),gameWindow.getHeight());
 
@@ -198,19 +219,9 @@ public class LobbyScene extends BaseScene {
         var welcome = new Text("Welcome to the lobby!\nType /nick NewName to change your nickname");
         welcome.getStyleClass().add("instructions");
 
-        messageBox = new VBox();
-        messageBox.getStyleClass().add("messages");
-
-        messageScroller = new ScrollPane();
-        messageScroller.setPrefHeight(350);
-        messageScroller.setContent(messageBox);
-        messageScroller.setFitToWidth(true);
-        messageScroller.getStyleClass().add("scroller");
-
-        //Listener that auto scrolls to the bottom of the scroll pane
-        messageBox.heightProperty().addListener((observableValue, oldValue, newValue) -> {
-            messageScroller.setVvalue(messageScroller.getVmax());
-        });
+        //Shows the newest messages, scrolling back through the history with the mouse wheel
+        var messageView = new ChatView(chatLog, 16);
+        messageView.setPrefHeight(350);
 
         var messageInput = new TextField();
         messageInput.setPromptText("Send a new message");
@@ -238,7 +249,7 @@ public class LobbyScene extends BaseScene {
         HBox.setHgrow(startPane, Priority.ALWAYS);
         HBox.setHgrow(leavePane, Priority.ALWAYS);
 
-        currentChannel.getChildren().addAll(usersList, welcome, messageScroller, messageInput, buttonBox);
+        currentChannel.getChildren().addAll(usersList, welcome, messageView, messageInput, buttonBox);
 
         currentChannelBox.getChildren().addAll(currentChannelName, currentChannel);
 
@@ -250,10 +261,14 @@ public class LobbyScene extends BaseScene {
     }
 
     public void initialise() {
+        scene.getWindow().focusedProperty().addListener(focusListener);
+        refresh.setActive(scene.getWindow().isFocused());
+        refresh.start();
+
         scene.setOnKeyPressed(e -> {
             if (e.getCode() == KeyCode.ESCAPE) {
                 exitChannel();
-                timer.cancel();
+                stopRefreshing();
                 logger.info("Going back to the menu");
                 gameWindow.startMenu();
             } else {
@@ -271,10 +286,10 @@ public class LobbyScene extends BaseScene {
     }
 
     /**
-     * Registers the CommunicationsListener attached to the ScoresScene
+     * Registers the MessageListener attached to the scene
      * @param listener listener
      */
-    private void setListener(CommunicationsListener listener) {
+    private void setListener(MessageListener listener) {
         this.listener = listener;
     }
 
@@ -282,77 +297,45 @@ public class LobbyScene extends BaseScene {
      * Handles various responses from the Communicator
      * @param response response
      */
-    private void handleResponses(String response) {
-        if (response.contains("CHANNELS")) {
+    private void handleResponses(ProtocolMessage response) {
+        if (response instanceof Channels channels) {
             // Update channels list
-            String[] channelArr = response.replace("CHANNELS ", "").split("\\n");
-
-            Platform.runLater(() -> {
-                channelList.getChildren().clear();
-                for (String string : channelArr) {
-                    var channel = new Text(string);
-                    channel.getStyleClass().add("channelItem");
-                    if (string.equals(currentChannelName.getText())) channel.getStyleClass().add("selected");
-                    channel.setOnMouseClicked(e -> joinChannel(string));
-                    channelList.getChildren().add(channel);
-                }
-            });
+            Platform.runLater(() -> refresh.result(updateChannels(channels.channels())));
 
-        } else if (response.contains("USERS")) {
+        } else if (response instanceof Users users) {
             //Update users list of current channel
-            String[] userArr = response.replace("USERS ","").split("\n");
+            Platform.runLater(() -> updateUsers(users.users()));
 
-            Platform.runLater(() -> {
-                usersList.getChildren().clear();
-                for (String user : userArr) {
-                    usersList.getChildren().add(new Text(user));
-                }
-            });
-
-        } else if (response.contains("NICK") && response.contains(":")) {
+        } else if (response instanceof Nick nick && nick.oldName() != null) {
             //Change user's nickname
-            String[] nickArr = response.replace("NICK ","").split(":");
-
-            var oldName = nickArr[0];
-            var newName = nickArr[1];
-
             Platform.runLater(() -> {
-                for (Node user : usersList.getChildren()) {
-                    if (user instanceof Text && ((Text) user).getText().equals(oldName)) {
-                        ((Text) user).setText(newName);
-                    }
-                }
+                var user = userRows.remove(nick.oldName());
+                if (user == null) return;
+                user.setText(nick.newName());
+                userRows.put(nick.newName(), user);
             });
 
-        } else if (response.contains("JOIN")) {
+        } else if (response instanceof Join join) {
             //Join a channel and display channel UI
-            var channelName = response.replace("JOIN ","");
+            var channelName = join.channel();
 
             Platform.runLater(() -> {
-                for (Node channel : channelList.getChildren()) {
-                    if (channel instanceof Text && ((Text) channel).getText().equals(channelName)) {
-                        channel.getStyleClass().add("selected");
-                    }
-                }
-                messageBox.getChildren().clear();
+                var channel = channelRows.get(channelName);
+                if (channel != null) channel.getStyleClass().add("selected");
+                chatLog.clear();
                 currentChannelName.setText(channelName);
                 currentChannelBox.setVisible(true);
             });
             Multimedia.playAudio("lifegain.wav");
 
-            gameWindow.getCommunicator().send("LIST");
+            refresh.refreshNow();
 
-        } else if (response.contains("MSG")) {
+        } else if (response instanceof Chat chat) {
             //Handle incoming message from server and display in chat box
-            String[] msgArr = response.replace("MSG ","").split(":",2);
-
-            var player = msgArr[0];
-            var message = msgArr[1];
-
-            var newName = Pattern.compile("^/nick .+$");
-            var emptyNick = Pattern.compile("^/nick$");
+            var player = chat.player();
+            var message = chat.message();
 
-            if (emptyNick.matcher(message).find()) {
+            if (message.equals("/nick")) {
                 //Don't allow empty nicknames
                 Platform.runLater(() -> {
                     var info = new Alert(AlertType.WARNING);
@@ -361,47 +344,114 @@ public class LobbyScene extends BaseScene {
                     info.showAndWait();
                 });
 
-            } else if (newName.matcher(message).find()) {
+            } else if (message.startsWith("/nick ")) {
                 //Change user's nickname
-                gameWindow.getCommunicator().send(String.format("NICK %s", message.split("k ",2)[1]));
+                gameWindow.getCommunicator().send(String.format("NICK %s", message.substring(6)));
 
             } else {
-                var messageToSend = new Text();
-                messageToSend.setText(String.format("[%s] <%s>: %s", formatter.format(LocalDateTime.now()), player, message));
-
-                Platform.runLater(() -> {
-                    messageBox.getChildren().add(messageToSend);
-                });
+                chatLog.add(player, message);
                 Multimedia.playAudio("message.wav");
             }
 
-        } else if (response.contains("PARTED")) {
+        } else if (response instanceof Parted) {
             //Handle leaving the current channel
-            currentChannelName.setText("");
-            currentChannelBox.setVisible(false);
-            gameWindow.getCommunicator().send("LIST");
+            Platform.runLater(() -> {
+                currentChannelName.setText("");
+                currentChannelBox.setVisible(false);
+                usersList.getChildren().clear();
+                userRows.clear();
+            });
+            refresh.refreshNow();
 
-        } else if (response.contains("ERROR")) {
+        } else if (response instanceof ServerError error) {
             //Display error dialog with error message
-            var errorMessage = response.replace("ERROR ","");
-
             Platform.runLater(() -> {
                 var alert = new Alert(AlertType.ERROR);
                 alert.setTitle("Error");
                 alert.setHeaderText("Oops!");
-                alert.setContentText(errorMessage);
+                alert.setContentText(error.message());
                 alert.showAndWait();
             });
 
-        } else if (response.contains("START")) {
-            timer.cancel();
-            Platform.runLater(gameWindow::startMulti);
+        } else if (response instanceof Start) {
+            Platform.runLater(() -> {
+                stopRefreshing();
+                gameWindow.startMulti();
+            });
 
-        } else if (response.contains("DIE")) {
+        } else if (response instanceof Die) {
             gameWindow.getCommunicator().send("USERS");
         }
     }
 
+    /**
+     * Requests the channel list, unless the connection is down and the request would only wait in the outbox
+     */
+    private void requestChannels() {
+        var communicator = gameWindow.getCommunicator();
+        if (communicator.getState() == Communicator.State.CONNECTED) communicator.send("LIST");
+    }
+
+    /**
+     * Stops requesting the channel list, when leaving the lobby
+     */
+    private void stopRefreshing() {
+        refresh.stop();
+        scene.getWindow().focusedProperty().removeListener(focusListener);
+    }
+
+    /**
+     * Brings the channel list in line with the server's, only adding and removing the rows that differ
+     * @param channels the channels, in the server's order
+     * @return whether anything changed
+     */
+    private boolean updateChannels(List<String> channels) {
+        var current = new HashSet<>(channels);
+        var removed = new ArrayList<Text>();
+        channelRows.entrySet().removeIf(row -> {
+            if (current.contains(row.getKey())) return false;
+            removed.add(row.getValue());
+            return true;
+        });
+        channelList.getChildren().removeAll(removed);
+
+        var added = new ArrayList<Text>();
+        for (String name : channels) {
+            if (channelRows.containsKey(name)) continue;
+            var channel = new Text(name);
+            channel.getStyleClass().add("channelItem");
+            if (name.equals(currentChannelName.getText())) channel.getStyleClass().add("selected");
+            channel.setOnMouseClicked(e -> joinChannel(name));
+            channelRows.put(name, channel);
+            added.add(channel);
+        }
+        channelList.getChildren().addAll(added);
+
+        return !removed.isEmpty() || !added.isEmpty();
+    }
+
+    /**
+     * Brings the users list in line with the server's, only adding and removing the entries that differ
+     * @param users the users in the current channel
+     */
+    private void updateUsers(List<String> users) {
+        var current = new HashSet<>(users);
+        var removed = new ArrayList<Text>();
+        userRows.entrySet().removeIf(row -> {
+            if (current.contains(row.getKey())) return false;
+            removed.add(row.getValue());
+            return true;
+        });
+        usersList.getChildren().removeAll(removed);
+
+        for (String name : users) {
+            if (userRows.containsKey(name)) continue;
+            var user = new Text(name);
+            userRows.put(name, user);
+            usersList.getChildren().add(user);
+        }
+    }
+
     /**
      * Creates a new channel
      * @param field TextField for typing the new channel name
@@ -412,6 +462,7 @@ public class LobbyScene extends BaseScene {
         field.setOnAction(e -> {
             gameWindow.getCommunicator().send(String.format("CREATE %s", field.getText()));
             field.setVisible(false);
+            refresh.refreshNow();
         });
     }
 
@@ -436,11 +487,8 @@ public class LobbyScene extends BaseScene {
      */
     private void exitChannel() {
         Platform.runLater(() -> {
-            for (Node channel : channelList.getChildren()) {
-                if (channel instanceof Text && ((Text) channel).getText().equals(currentChannelName.getText())) {
-                    channel.getStyleClass().remove("selected");
-                }
-            }
+            var channel = channelRows.get(currentChannelName.getText());
+            if (channel != null) channel.getStyleClass().remove("selected");
         });
         gameWindow.getCommunicator().send("PART");
     }
@@ -79,6 +79,9 @@ public class MenuScene extends BaseScene {
 
         single.setOnMouseClicked(this::startGame);
         multi.setOnMouseClicked(this::showLobby);
+
+        //Multiplayer is only available once connected to the server
+        multi.disableProperty().bind(gameWindow.onlineProperty().not());
         instruct.setOnMouseClicked(this::showInstructions);
         exit.setOnMouseClicked(this::exitGame);
 
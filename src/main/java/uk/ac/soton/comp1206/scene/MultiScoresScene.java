@@ -1,7 +1,5 @@
 package uk.ac.soton.comp1206.scene;
 
-import static java.lang.Integer.compare;
-import static java.lang.Integer.parseInt;
 import static uk.ac.soton.comp1206.game.Multimedia.rotateLogo;
 
 import java.util.ArrayList;
@@ -22,6 +20,7 @@ import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.ScoresList;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
+import uk.ac.soton.comp1206.game.PlayerState;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -98,14 +97,11 @@ public class MultiScoresScene extends ScoresScene {
     private void populateFinalScores() {
         ArrayList<Pair<String, Integer>> loadedScores = new ArrayList<>();
 
-        for (Pair<Pair<String, String>, String> playerScore : ((MultiplayerGame) game).getPlayerScores()) {
-            var name = playerScore.getKey().getKey();
-            var score = playerScore.getKey().getValue();
-
-            loadedScores.add(new Pair<>(name, parseInt(score)));
+        //The standings are already ranked by score
+        for (PlayerState player : ((MultiplayerGame) game).getStandings().getRanking()) {
+            loadedScores.add(new Pair<>(player.name(), player.score()));
         }
 
-        loadedScores.sort((o1, o2) -> compare(o2.getValue(), o1.getValue()));
         finalScores.set(FXCollections.observableArrayList(loadedScores));
     }
 }
@@ -1,18 +1,9 @@
 package uk.ac.soton.comp1206.scene;
 
-import static java.lang.Integer.compare;
-import static java.lang.Integer.parseInt;
-
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.regex.Pattern;
 import javafx.application.Platform;
-import javafx.beans.property.ListProperty;
-import javafx.beans.property.SimpleListProperty;
-import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.ScrollPane;
@@ -25,16 +16,23 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Text;
-import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.ChatView;
 import uk.ac.soton.comp1206.component.GameBlock;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.LeaderBoard;
-import uk.ac.soton.comp1206.event.CommunicationsListener;
-import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.component.OpponentBoards;
+import uk.ac.soton.comp1206.event.ConnectionListener;
+import uk.ac.soton.comp1206.event.MessageListener;
+import uk.ac.soton.comp1206.game.ChatLog;
 import uk.ac.soton.comp1206.game.Multimedia;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
+import uk.ac.soton.comp1206.game.PlayerState;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.ProtocolMessage;
+import uk.ac.soton.comp1206.network.ScorePublisher;
+import uk.ac.soton.comp1206.network.ProtocolMessage.*;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -45,17 +43,15 @@ public class MultiplayerScene extends ChallengeScene {
 
     private static final Logger logger = LogManager.getLogger(MultiplayerScene.class);
 
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-
     /**
      * Listener that handles incoming messages from the Communicator
      */
-    private CommunicationsListener listener;
+    private MessageListener listener;
 
     /**
-     * Container for the messages between the players
+     * Holds the messages between the players
      */
-    private VBox messageBox;
+    private final ChatLog chatLog = new ChatLog();
 
     /**
      * TextField to allow user to send messages
@@ -68,14 +64,29 @@ public class MultiplayerScene extends ChallengeScene {
     private LeaderBoard leaderboard;
 
     /**
-     * Holds every player's scores for the current game
+     * Shows a miniature of each other player's board
+     */
+    private OpponentBoards opponentBoards;
+
+    /**
+     * Sends the player's score and lives to the other players
+     */
+    private ScorePublisher scorePublisher;
+
+    /**
+     * Makes the piece requests again when the connection to the server is lost
+     */
+    private ConnectionListener connectionListener;
+
+    /**
+     * Whether the scene has been initialised and is ready for the game to start
      */
-    private ListProperty<Pair<Pair<String, String>, String>> playerScores;
+    private boolean initialised = false;
 
     /**
-     * Timer used to periodically request a new GamePiece from the Communicator
+     * Whether the game has been started
      */
-    private Timer timer;
+    private boolean gameStarted = false;
 
     /**
      * Creates a new MultiPlayer challenge scene
@@ -88,34 +99,39 @@ public class MultiplayerScene extends ChallengeScene {
         setListener(this::handleComms);
 
         setSceneName("Multiplayer");
-
-        playerScores = new SimpleListProperty<>(FXCollections.observableArrayList());
     }
 
     /**
-     * Registers the CommunicationsListener attached to the scene
+     * Registers the MessageListener attached to the scene
      * @param listener listener
      */
-    public void setListener(CommunicationsListener listener) {
+    public void setListener(MessageListener listener) {
         this.listener = listener;
     }
 
     public void setupGame() {
         logger.info("Starting new multiplayer challenge");
 
-        game = new MultiplayerGame(5,5);
-
-        timer = new Timer();
-        timerList.add(timer);
-        timer.scheduleAtFixedRate(new TimerTask() {
-            public void run() {
-                gameWindow.getCommunicator().send("PIECE");
-            }
-        }, 0, 500);
+        var multiplayerGame = new MultiplayerGame(5,5);
+        game = multiplayerGame;
 
         game.setNextPieceListener(this::upcomingPiece);
         game.setLineClearedListener(this::lineCleared);
         game.setGameLoopListener(this::timer);
+
+        scorePublisher = new ScorePublisher(gameWindow.getCommunicator());
+        scorePublisher.setScore(game.getScore());
+        scorePublisher.setLives(game.getLives());
+        scorePublisher.setBoard(game.getGrid());
+
+        //Fill the piece queue up front, after which pieces are only requested as they are used
+        multiplayerGame.setPieceRequestListener(this::requestPieces);
+        multiplayerGame.requestPieces();
+
+        connectionListener = state -> {
+            if (state == Communicator.State.RECONNECTING) multiplayerGame.connectionLost();
+        };
+        gameWindow.getCommunicator().addConnectionListener(connectionListener);
     }
 
     public void initialise() {
@@ -133,22 +149,38 @@ public class MultiplayerScene extends ChallengeScene {
             }
         });
 
-        //Delays the start of the game so a few GamePieces can be populated
+        //Start as soon as the first pieces arrive, or after a short wait using random pieces if they never do
+        initialised = true;
+        startGame(false);
+
         var pause = new Timer();
         timerList.add(pause);
         pause.schedule(new TimerTask() {
             public void run() {
-                logger.info("Game started");
-                game.start();
-                Multimedia.stopMusic();
-                Multimedia.playMusic("game_start.wav", "game.wav", true);
+                Platform.runLater(() -> startGame(true));
             }
-        }, 500);
+        }, 2000);
+    }
+
+    /**
+     * Starts the game once the scene is ready and the current and following pieces have arrived
+     * @param force start even if the pieces haven't arrived
+     */
+    private void startGame(boolean force) {
+        if (!initialised || gameStarted) return;
+        if (!force && ((MultiplayerGame) game).getQueuedPieces() < 2) return;
+
+        gameStarted = true;
+        logger.info("Game started");
+        game.start();
+        scorePublisher.start();
+        Multimedia.stopMusic();
+        Multimedia.playMusic("game_start.wav", "game.wav", true);
     }
 
     public void build() {
         logger.info("Building " + this.getClass().getName());
-        gameWindow.getCommunicator().addListener(listener);
+        gameWindow.getCommunicator().addMessageListener(listener);
         gameWindow.getCommunicator().send("SCORES");
 
         setupGame();
@@ -172,7 +204,7 @@ public class MultiplayerScene extends ChallengeScene {
         var scoreNumber = new Text("0");
         scoreNumber.textProperty().bind(game.scoreProperty().asString("%d"));
 
-        scoreNumber.textProperty().addListener((observableValue, oldValue, newValue) -> updateScore(newValue));
+        game.scoreProperty().addListener((observableValue, oldValue, newValue) -> updateScore(newValue.intValue()));
 
         scoreHeading.getStyleClass().add("heading");
         scoreNumber.getStyleClass().add("score");
@@ -184,7 +216,7 @@ public class MultiplayerScene extends ChallengeScene {
         livesNumber = new Text("3");
         livesNumber.textProperty().bind(game.livesProperty().asString("%d"));
 
-        livesNumber.textProperty().addListener((observableValue, oldValue, newValue) -> updateLives(newValue));
+        game.livesProperty().addListener((observableValue, oldValue, newValue) -> updateLives(newValue.intValue()));
 
         livesHeading.getStyleClass().add("heading");
         livesNumber.getStyleClass().add("lives");
@@ -232,15 +264,8 @@ public class MultiplayerScene extends ChallengeScene {
         var chatTitle = new Text("Messages");
         chatTitle.getStyleClass().add("heading");
 
-        messageBox = new VBox();
-        messageBox.getStyleClass().add("messages");
-
-        var messageScroller = new ScrollPane(messageBox);
-        messageScroller.setPrefHeight(100);
-        messageScroller.setFitToWidth(true);
-        messageScroller.getStyleClass().add("scroller");
-
-        messageBox.heightProperty().addListener((observableValue, oldValue, newValue) -> messageScroller.setVvalue(messageScroller.getVmax()));
+        var messageView = new ChatView(chatLog, 4);
+        messageView.setPrefHeight(100);
 
         chatInput = new TextField();
         chatInput.setPromptText("Send a new message");
@@ -249,12 +274,12 @@ public class MultiplayerScene extends ChallengeScene {
             chatInput.clear();
         });
 
-        chatBox.getChildren().addAll(chatTitle, messageScroller, chatInput);
+        chatBox.getChildren().addAll(chatTitle, messageView, chatInput);
 
         //------------------------------------------------------------------------------------------
 
         leaderboard = new LeaderBoard();
-        leaderboard.getLeaderBoardScores().bind(playerScores);
+        leaderboard.getLeaderBoardScores().set(((MultiplayerGame) game).getStandings().getRanking());
 
         var leaderText = new Text("Leaderboard (Score:Lives)");
         leaderText.getStyleClass().add("heading");
@@ -270,7 +295,11 @@ public class MultiplayerScene extends ChallengeScene {
 
         //------------------------------------------------------------------------------------------
 
-        var onlineBox = new VBox(chatBox, leaderText, boardScroller);
+        opponentBoards = new OpponentBoards(game.getGrid().getCols(), game.getGrid().getRows(), 10);
+
+        //------------------------------------------------------------------------------------------
+
+        var onlineBox = new VBox(chatBox, leaderText, boardScroller, opponentBoards);
         onlineBox.setSpacing(10);
         onlineBox.setAlignment(Pos.CENTER);
 
@@ -305,69 +334,43 @@ public class MultiplayerScene extends ChallengeScene {
      * Handles various responses from the Communicator
      * @param response response
      */
-    private void handleComms(String response) {
-        var score = Pattern.compile("^SCORE .+$");
-        var scores = Pattern.compile("^SCORES .+$", Pattern.DOTALL);
-        var piece = Pattern.compile("^PIECE \\d+$");
-        var message = Pattern.compile("^MSG .+$");
-        var die = Pattern.compile("^DIE .+$");
-
-        if (score.matcher(response).find()) {
-            logger.info("Handling SCORE");
-            String[] scoreInfo = response.replace("SCORE ","").split(":");
-            var name = scoreInfo[0];
-            var playerScore = scoreInfo[1];
-
-            //Replace old score with new score
-            for (Pair<Pair<String, String>, String> player : playerScores) {
-                if (player.getKey().getKey().equals(name)) {
-                    playerScores.set(playerScores.indexOf(player), new Pair<>(new Pair<>(player.getKey().getKey(), playerScore), player.getValue()));
-                    break;
-                }
+    private void handleComms(ProtocolMessage response) {
+        var standings = ((MultiplayerGame) game).getStandings();
+
+        if (response instanceof Score score) {
+            logger.debug("Handling SCORE");
+            standings.updateScore(score.player(), score.score());
+
+        } else if (response instanceof Scores scores) {
+            logger.debug("Handling SCORES");
+            var loadedPlayers = new ArrayList<PlayerState>(scores.players().size());
+
+            for (PlayerScore player : scores.players()) {
+                var dead = player.lives().equalsIgnoreCase("DEAD");
+                var lives = dead ? 0 : Integer.parseInt(player.lives());
+                loadedPlayers.add(new PlayerState(player.name(), player.score(), lives, dead));
+                if (dead) opponentBoards.remove(player.name());
             }
+            for (String left : standings.replaceAll(loadedPlayers)) opponentBoards.remove(left);
 
-        } else if (scores.matcher(response).find()) {
-            logger.info("Handling SCORES");
-            String[] scoreArr = response.replace("SCORES ","").split("\n");
-            var loadedPlayers = new ArrayList<Pair<Pair<String, String>, String>>();
-
-            for (String player : scoreArr) {
-                String[] playerInfo = player.split(":");
-                var name = playerInfo[0];
-                var playerScore = playerInfo[1];
-                var lives = playerInfo[2];
+        } else if (response instanceof Piece piece) {
+            logger.debug("Received PIECE {}", piece.piece());
+            getNextPiece(piece.piece());
+            if (!gameStarted) Platform.runLater(() -> startGame(false));
 
-                loadedPlayers.add(new Pair<>(new Pair<>(name, playerScore), lives));
-            }
+        } else if (response instanceof Board update) {
+            //An update sent just before a player died can arrive after, so don't bring their board back
+            var player = standings.get(update.player());
+            if (player == null || !player.dead()) opponentBoards.update(update.player(), update.data());
 
-            loadedPlayers.sort((o1, o2) -> compare(parseInt(o2.getKey().getValue()), parseInt(o1.getKey().getValue())));
-
-            if (playerScores.isEmpty()) {
-                playerScores.set(FXCollections.observableArrayList(loadedPlayers));
-            } else {
-                playerScores.clear();
-                playerScores.addAll(FXCollections.observableArrayList(loadedPlayers));
-            }
-
-        } else if (piece.matcher(response).find()) {
-            logger.info("Requesting PIECE");
-            var value = response.replace("PIECE ","");
-            getNextPiece(parseInt(value));
-
-        } else if (message.matcher(response).find()) {
-            logger.info("Handling MESSAGE");
-            String[] msgArr = response.replace("MSG ","").split(":",2);
-
-            var player = msgArr[0];
-            var chat = msgArr[1];
-
-            var messageToSend = new Text();
-            messageToSend.setText(String.format("[%s] <%s>: %s", formatter.format(LocalDateTime.now()), player, chat));
-
-            Platform.runLater(() -> messageBox.getChildren().add(messageToSend));
+        } else if (response instanceof Chat chat) {
+            logger.debug("Handling MESSAGE");
+            chatLog.add(chat.player(), chat.message());
             Multimedia.playAudio("message.wav");
 
-        } else if (die.matcher(response).find()) {
+        } else if (response instanceof Die die) {
+            standings.markDead(die.player());
+            opponentBoards.remove(die.player());
             gameWindow.getCommunicator().send("SCORES");
         }
     }
@@ -389,28 +392,41 @@ public class MultiplayerScene extends ChallengeScene {
      * @param value value of the next game piece
      */
     public void getNextPiece(int value) {
-        ((MultiplayerGame) game).enqueuePiece(GamePiece.createPiece(value));
+        ((MultiplayerGame) game).enqueuePiece(value);
+    }
+
+    /**
+     * Requests the given number of pieces from the Communicator
+     * @param count number of pieces
+     */
+    private void requestPieces(int count) {
+        for (int i = 0; i < count; i++) {
+            gameWindow.getCommunicator().send("PIECE");
+        }
     }
 
     /**
-     * Sends the player's current score to the Communicator
+     * Passes the player's current score on to be published
      * @param score score
      */
-    public void updateScore(String score) {
-        gameWindow.getCommunicator().send("SCORE " + score);
+    public void updateScore(int score) {
+        scorePublisher.setScore(score);
     }
 
     /**
-     * Sends the player's current lives to the Communicator
+     * Passes the player's current lives on to be published, publishing straight away if the player has died
      * @param lives lives
      */
-    public void updateLives(String lives) {
-        gameWindow.getCommunicator().send("LIVES " + lives);
+    public void updateLives(int lives) {
+        scorePublisher.setLives(lives);
+        if (lives < 0) scorePublisher.flush();
     }
 
     protected void quitScene() {
+        //Send the final score and lives before dying
+        scorePublisher.stop();
+        gameWindow.getCommunicator().removeConnectionListener(connectionListener);
         gameWindow.getCommunicator().send("DIE");
-        ((MultiplayerGame) game).setPlayerScores(playerScores);
         super.quitScene();
         gameWindow.startMultiScores(game);
     }
@@ -1,16 +1,8 @@
 package uk.ac.soton.comp1206.scene;
 
 import static java.lang.Integer.compare;
-import static java.lang.Integer.parseInt;
 import static uk.ac.soton.comp1206.game.Multimedia.rotateLogo;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import javafx.application.Platform;
@@ -33,8 +25,12 @@ import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.ScoresList;
-import uk.ac.soton.comp1206.event.CommunicationsListener;
+import uk.ac.soton.comp1206.event.MessageListener;
 import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.ScoreService;
+import uk.ac.soton.comp1206.network.ProtocolMessage;
+import uk.ac.soton.comp1206.network.ProtocolMessage.HiScores;
+import uk.ac.soton.comp1206.network.ProtocolMessage.NamedScore;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
@@ -52,7 +48,7 @@ public class ScoresScene extends BaseScene {
     /**
      * Listener that handles incoming messages from the Communicator
      */
-    private CommunicationsListener listener;
+    private MessageListener listener;
 
     /**
      * Holds the list of local scores
@@ -85,9 +81,9 @@ public class ScoresScene extends BaseScene {
     private ScoresList remoteScoresList;
 
     /**
-     * Holds the file object that contains the list of scores
+     * Holds the local scores, shared between scenes
      */
-    private File scoresFile;
+    private final ScoreService scoreService;
 
     /**
      * Create a new scene, passing in the GameWindow the scene will be displayed in
@@ -99,6 +95,7 @@ public class ScoresScene extends BaseScene {
         super(gameWindow);
         setOnReceiveComms(this::parseOnlineScores);
         this.game = game;
+        this.scoreService = gameWindow.getScoreService();
         setSceneName("Scores");
         logger.info("Creating Scores scene");
 
@@ -109,7 +106,7 @@ public class ScoresScene extends BaseScene {
 
         localScoresList = new ScoresList();
         localScoresList.scoreListProperty().bind(localScores);
-        loadLocalScores("scores.txt");
+        loadLocalScores();
 
         remoteScores = new SimpleListProperty<>(FXCollections.observableArrayList());
         ArrayList<Pair<String, Integer>> remoteArrayList = new ArrayList<>();
@@ -126,7 +123,7 @@ public class ScoresScene extends BaseScene {
      */
     public void build() {
         logger.info("Building " + this.getClass().getName());
-        gameWindow.getCommunicator().addListener(listener);
+        gameWindow.getCommunicator().addMessageListener(listener);
 
         root = new GamePane(gameWindow.getWidth(),gameWindow.getHeight());
 
@@ -177,10 +174,10 @@ public class ScoresScene extends BaseScene {
     }
 
     /**
-     * Registers the CommunicationsListener attached to the ScoresScene
+     * Registers the MessageListener attached to the ScoresScene
      * @param listener listener
      */
-    public void setOnReceiveComms(CommunicationsListener listener) {
+    public void setOnReceiveComms(MessageListener listener) {
         this.listener = listener;
     }
 
@@ -195,27 +192,21 @@ public class ScoresScene extends BaseScene {
      * Handles the scores received from the Communicator
      * @param response response from the communicator
      */
-    public void parseOnlineScores(String response) {
+    public void parseOnlineScores(ProtocolMessage response) {
         //Only parse the response if it's a set of high scores
-        if (response.contains("HISCORES")) {
+        if (response instanceof HiScores hiScores) {
             logger.info("Parsing online scores");
             List<Pair<String, Integer>> loadedScores = new ArrayList<>();
 
-            var newResponse = response.replaceFirst("HISCORES ", "");
-            String[] responseArr = newResponse.split("\n");
-
-            for (String pair : responseArr) {
-                var name = pair.split(":")[0];
-                var score = pair.split(":")[1];
-
-                loadedScores.add(new Pair<>(name,parseInt(score)));
+            for (NamedScore score : hiScores.scores()) {
+                loadedScores.add(new Pair<>(score.name(), score.score()));
             }
 
             loadedScores.sort((o1, o2) -> compare(o2.getValue(), o1.getValue()));
             observableRemoteScores.setAll(loadedScores);
 
             logger.info("Finished parsing");
-            checkForHiScore();
+            scoreService.whenLoaded(this::checkForHiScore);
         }
     }
 
@@ -230,99 +221,23 @@ public class ScoresScene extends BaseScene {
     }
 
     /**
-     * Loads a set of high scores from a config file to display on the screen
-     * @param filePath file path
+     * Shows the local scores, once they have loaded
      */
-    public void loadLocalScores(String filePath) {
-        List<Pair<String, Integer>> loadedScores = new ArrayList<>();
-
-        try {
-            scoresFile = new File(filePath);
-
-            //If new file was just created or existing file is empty
-            if (scoresFile.createNewFile() || scoresFile.length() <= 0) {
-                writeDefaultScores();
-            }
-
-            var reader = new BufferedReader(new FileReader(scoresFile));
-            var it = reader.lines().iterator();
-
-            while (it.hasNext()) {
-                var line = it.next().trim();
-                if (!line.isEmpty()) {
-                    var parts = line.split(":");
-                    if (parts.length == 2) {
-                        var name = parts[0].trim();
-                        var score = parseInt(parts[1].trim());
-
-                        loadedScores.add(new Pair<>(name,score));
-                    }
-                }
-            }
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException("The file with the specified path couldn't be found");
-        } catch (IOException e) {
-            throw new RuntimeException("Something went wrong - scores were not loaded");
+    public void loadLocalScores() {
+        observableLocalScores.setAll(scoreService.getScores());
+        if (!scoreService.isLoaded()) {
+            scoreService.whenLoaded(() -> observableLocalScores.setAll(scoreService.getScores()));
         }
-
-        loadedScores.sort((o1, o2) -> compare(o2.getValue(), o1.getValue()));
-        observableLocalScores.setAll(loadedScores);
     }
 
     /**
-     * Writes the local scores onto a config file
-     * @param filePath file path
+     * Adds a new local score, which is saved in the background
+     * @param name player name
+     * @param score score
      */
-    public void writeLocalScores(String filePath) {
-        try {
-            scoresFile = new File(filePath);
-
-            //If new file was just created or existing file is empty
-            if (scoresFile.createNewFile() || scoresFile.length() <= 0) {
-                writeDefaultScores();
-            }
-
-            var writer = new BufferedWriter(new FileWriter(scoresFile));
-
-            for (Pair<String, Integer> score : localScores) {
-                writer.write(score.getKey() + ":" + score.getValue());
-                writer.newLine();
-            }
-
-            writer.close();
-
-        } catch (IOException e) {
-            throw new RuntimeException("Something went wrong - scores were not written");
-        }
-    }
-
-    /**
-     * Writes a set of default scores to the file if it doesn't exist already, or it exists and is empty
-     * @throws IOException if something goes wrong when opening the file
-     */
-    private void writeDefaultScores() throws IOException {
-        logger.info("Writing default scores");
-        var writer = new BufferedWriter(new FileWriter(scoresFile));
-
-        String[] defaultScores = {
-            "Player1:100",
-            "Player2:90",
-            "Player3:80",
-            "Player4:70",
-            "Player5:60",
-            "Player6:50",
-            "Player7:40",
-            "Player8:30",
-            "Player9:20",
-            "Player10:10",
-        };
-
-        for (String score : defaultScores) {
-            writer.write(score);
-            writer.newLine();
-        }
-
-        writer.close();
+    public void writeLocalScore(String name, int score) {
+        scoreService.submit(name, score);
+        observableLocalScores.setAll(scoreService.getScores());
     }
 
     /**
@@ -338,8 +253,7 @@ public class ScoresScene extends BaseScene {
         Since the variables will be used in the Platform.runLater lambda below,
         they have to be effectively final
          */
-        newLocalHiScore = observableLocalScores.stream()
-            .anyMatch(player -> game.getScore() > player.getValue());
+        newLocalHiScore = scoreService.isHighScore(game.getScore());
 
         newRemoteHiScore = observableRemoteScores.stream()
             .anyMatch(player -> game.getScore() > player.getValue());
@@ -373,9 +287,7 @@ public class ScoresScene extends BaseScene {
                     name -> {
                         if (newLocalHiScore) {
                             logger.info("New local high score");
-                            observableLocalScores.add(new Pair<>(name, game.getScore()));
-                            observableLocalScores.sort((o1, o2) -> compare(o2.getValue(), o1.getValue()));
-                            writeLocalScores("scores.txt");
+                            writeLocalScore(name, game.getScore());
                         }
 
                         if (newRemoteHiScore) {
@@ -0,0 +1,166 @@
+package uk.ac.soton.comp1206.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+/**
+ * A channel on the TetrECS server: the players in it, which of them is the host, and the game they play together.
+ * All access is synchronized on the channel.
+ */
+class Channel {
+
+    /**
+     * How many pieces the sequence grows by at a time
+     */
+    private static final int PIECE_CHUNK = 64;
+
+    /**
+     * The channel's name
+     */
+    private final String name;
+
+    /**
+     * The players in the channel, in the order they joined. The first is the host
+     */
+    private final List<ClientSession> members = new ArrayList<>();
+
+    /**
+     * The piece sequence shared by every player in the game, so all players get the same pieces in the same order
+     */
+    private int[] pieces = new int[0];
+
+    /**
+     * Generates the piece sequence for the current game, or null before the first game
+     */
+    private Random random;
+
+    /**
+     * Whether a game is in progress, during which the channel can't be joined
+     */
+    private boolean started = false;
+
+    /**
+     * Create a new empty channel
+     * @param name channel name
+     */
+    Channel(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the channel's name
+     * @return name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Add a player to the channel
+     * @param session the player
+     * @return true if the player is now the host
+     */
+    synchronized boolean join(ClientSession session) {
+        if (!members.contains(session)) members.add(session);
+        return members.get(0) == session;
+    }
+
+    /**
+     * Remove a player from the channel
+     * @param session the player
+     * @return the new host if the host left and someone else is still here, otherwise null
+     */
+    synchronized ClientSession part(ClientSession session) {
+        var wasHost = !members.isEmpty() && members.get(0) == session;
+        members.remove(session);
+        return wasHost && !members.isEmpty() ? members.get(0) : null;
+    }
+
+    /**
+     * Check whether every player has left
+     * @return true if there are no players
+     */
+    synchronized boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * Check whether a player is the host, who can start the game
+     * @param session the player
+     * @return true if they are the host
+     */
+    synchronized boolean isHost(ClientSession session) {
+        return !members.isEmpty() && members.get(0) == session;
+    }
+
+    /**
+     * Check whether a game is in progress
+     * @return true if started
+     */
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Get a snapshot of the players in the channel
+     * @return players
+     */
+    synchronized List<ClientSession> getMembers() {
+        return new ArrayList<>(members);
+    }
+
+    /**
+     * Start a game, resetting every player and the piece sequence
+     * @param seed seed for the piece sequence
+     */
+    synchronized void start(long seed) {
+        started = true;
+        random = new Random(seed);
+        pieces = new int[0];
+        for (ClientSession member : members) member.resetGame();
+    }
+
+    /**
+     * End the game once every player left in it has died, so the channel can be joined again
+     */
+    synchronized void finishIfOver() {
+        if (started && members.stream().allMatch(ClientSession::isDead)) started = false;
+    }
+
+    /**
+     * Get the piece at a position in the game's sequence, extending the sequence if needed
+     * @param index position
+     * @return piece value
+     */
+    synchronized int pieceAt(int index) {
+        if (index >= pieces.length) {
+            var grown = new int[Math.max(index + 1, pieces.length + PIECE_CHUNK)];
+            System.arraycopy(pieces, 0, grown, 0, pieces.length);
+            var generator = random != null ? random : new Random();
+            for (int i = pieces.length; i < grown.length; i++) grown[i] = generator.nextInt(GamePiece.PIECES);
+            pieces = grown;
+        }
+        return pieces[index];
+    }
+
+    /**
+     * Send a message to every player in the channel
+     * @param message the message
+     */
+    void broadcast(String message) {
+        for (ClientSession member : getMembers()) member.send(message);
+    }
+
+    /**
+     * Send a message to every player in the channel except one, such as the player it came from
+     * @param message the message
+     * @param sender the player to leave out
+     */
+    void broadcast(String message, ClientSession sender) {
+        for (ClientSession member : getMembers()) {
+            if (member != sender) member.send(message);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A single client connected to the TetrECS server. Reads commands from the client's connection, carries them out
+ * against the server and its channel, and sends the replies.
+ */
+class ClientSession implements Runnable {
+
+    private static final Logger logger = LogManager.getLogger(ClientSession.class);
+
+    /**
+     * The number of lives a player starts a game with
+     */
+    private static final int STARTING_LIVES = 3;
+
+    /**
+     * The server the client is connected to
+     */
+    private final TetrECSServer server;
+
+    /**
+     * The client's connection
+     */
+    private final WebSocketConnection connection;
+
+    /**
+     * The client's nickname, read by other sessions
+     */
+    private volatile String nickname;
+
+    /**
+     * The channel the client is in, or null. Only changed by this session's own thread
+     */
+    private Channel channel;
+
+    /**
+     * The player's score in the current game, read by other sessions
+     */
+    private volatile int score = 0;
+
+    /**
+     * The player's lives in the current game, read by other sessions
+     */
+    private volatile int lives = STARTING_LIVES;
+
+    /**
+     * Whether the player has died in the current game
+     */
+    private volatile boolean dead = false;
+
+    /**
+     * The position of the next piece this player will be given in their channel's sequence
+     */
+    private final AtomicInteger nextPiece = new AtomicInteger();
+
+    /**
+     * Create a session for a newly accepted connection
+     * @param server the server
+     * @param connection the connection
+     * @param nickname the starting nickname
+     */
+    ClientSession(TetrECSServer server, WebSocketConnection connection, String nickname) {
+        this.server = server;
+        this.connection = connection;
+        this.nickname = nickname;
+    }
+
+    /**
+     * Handle the client's commands until it disconnects
+     */
+    @Override
+    public void run() {
+        try {
+            connection.handshake();
+            logger.info("{} connected from {}", nickname, connection.getRemoteAddress());
+
+            String message;
+            while ((message = connection.read()) != null) {
+                if (!handle(message)) break;
+            }
+        } catch (IOException e) {
+            logger.info("{} disconnected: {}", nickname, e.getMessage());
+        } finally {
+            leaveChannel(false);
+            server.removeSession(this);
+            connection.close();
+            connection.release();
+        }
+    }
+
+    /**
+     * Carry out a single command
+     * @param message the command and its arguments
+     * @return false if the client quit
+     */
+    private boolean handle(String message) {
+        var space = message.indexOf(' ');
+        var command = space < 0 ? message : message.substring(0, space);
+        var argument = space < 0 ? "" : message.substring(space + 1).trim();
+
+        switch (command) {
+            case "LIST" -> send("CHANNELS " + String.join("\n", server.getChannelNames()));
+            case "CREATE" -> create(argument);
+            case "JOIN" -> join(argument);
+            case "PART" -> leaveChannel(true);
+            case "NICK" -> nick(argument);
+            case "USERS" -> {
+                if (inChannel()) send(usersMessage());
+            }
+            case "MSG" -> {
+                if (inChannel()) channel.broadcast("MSG " + nickname + ":" + argument);
+            }
+            case "START" -> start();
+            case "PIECE" -> {
+                if (inChannel()) send("PIECE " + channel.pieceAt(nextPiece.getAndIncrement()));
+            }
+            case "SCORE" -> {
+                var value = parse(argument);
+                if (value != null && inChannel()) {
+                    score = value;
+                    channel.broadcast("SCORE " + nickname + ":" + score);
+                }
+            }
+            case "LIVES" -> {
+                var value = parse(argument);
+                if (value != null) lives = value;
+            }
+            case "BOARD" -> {
+                if (inChannel() && !argument.isEmpty()) channel.broadcast("BOARD " + nickname + ":" + argument, this);
+            }
+            case "SCORES" -> {
+                if (inChannel()) send(scoresMessage());
+            }
+            case "DIE" -> {
+                if (inChannel()) {
+                    dead = true;
+                    channel.broadcast("DIE " + nickname);
+                    channel.finishIfOver();
+                }
+            }
+            case "HISCORES" -> send("HISCORES " + server.getHiScores());
+            case "HISCORE" -> hiScore(argument);
+            case "QUIT" -> {
+                return false;
+            }
+            default -> send("ERROR Unknown command " + command);
+        }
+        return true;
+    }
+
+    /**
+     * Create a channel and move into it
+     * @param name channel name
+     */
+    private void create(String name) {
+        if (name.isEmpty() || name.contains("\n")) {
+            send("ERROR Invalid channel name");
+            return;
+        }
+        var created = server.createChannel(name);
+        if (created == null) {
+            send("ERROR Channel " + name + " already exists");
+            return;
+        }
+        enter(created);
+    }
+
+    /**
+     * Join an existing channel, unless its game has started
+     * @param name channel name
+     */
+    private void join(String name) {
+        var target = server.getChannel(name);
+        if (target == null) {
+            send("ERROR Channel " + name + " does not exist");
+        } else if (target == channel) {
+            send("ERROR Already in channel " + name);
+        } else if (target.isStarted()) {
+            send("ERROR Game in progress in " + name);
+        } else {
+            enter(target);
+        }
+    }
+
+    /**
+     * Move into a channel, leaving any current one first
+     * @param target the channel
+     */
+    private void enter(Channel target) {
+        leaveChannel(false);
+        channel = target;
+        var host = target.join(this);
+        send("JOIN " + target.getName());
+        if (host) send("HOST " + target.getName());
+        target.broadcast(usersMessage());
+    }
+
+    /**
+     * Leave the current channel, if in one, handing the host role on and removing the channel if it is now empty
+     * @param reply whether to tell the client it has left
+     */
+    private void leaveChannel(boolean reply) {
+        if (channel == null) return;
+
+        var left = channel;
+        channel = null;
+        var newHost = left.part(this);
+        left.finishIfOver();
+        if (reply) send("PARTED");
+
+        if (left.isEmpty()) {
+            server.removeChannel(left);
+        } else {
+            if (newHost != null) newHost.send("HOST " + left.getName());
+            left.broadcast("USERS " + String.join("\n", names(left)));
+        }
+    }
+
+    /**
+     * Change nickname, telling the rest of the channel
+     * @param name the new nickname
+     */
+    private void nick(String name) {
+        if (name.isEmpty() || name.contains(":") || name.contains("\n")) {
+            send("ERROR Invalid nickname");
+            return;
+        }
+        var old = nickname;
+        nickname = name;
+        send("NICK " + name);
+        if (channel != null) {
+            for (ClientSession member : channel.getMembers()) {
+                if (member != this) member.send("NICK " + old + ":" + name);
+            }
+        }
+    }
+
+    /**
+     * Start the game in the channel, if this client is the host
+     */
+    private void start() {
+        if (!inChannel()) return;
+        if (!channel.isHost(this)) {
+            send("ERROR Only the host can start the game");
+            return;
+        }
+        channel.start(System.nanoTime());
+        channel.broadcast("START");
+    }
+
+    /**
+     * Add a high score and tell every client about it
+     * @param argument name:score
+     */
+    private void hiScore(String argument) {
+        var colon = argument.lastIndexOf(':');
+        var value = colon > 0 ? parse(argument.substring(colon + 1)) : null;
+        if (value == null) {
+            send("ERROR Invalid high score");
+            return;
+        }
+        var entry = argument.substring(0, colon) + ":" + value;
+        server.addHiScore(argument.substring(0, colon), value);
+        server.broadcast("NEWSCORE " + entry);
+    }
+
+    /**
+     * Reset this player's state for a new game
+     */
+    void resetGame() {
+        score = 0;
+        lives = STARTING_LIVES;
+        dead = false;
+        nextPiece.set(0);
+    }
+
+    /**
+     * Check whether the player has died in the current game
+     * @return true if dead
+     */
+    boolean isDead() {
+        return dead;
+    }
+
+    /**
+     * Send a message to the client. A failure is logged, and the client is dropped when its reader notices
+     * @param message the message
+     */
+    void send(String message) {
+        try {
+            connection.send(message);
+        } catch (IOException e) {
+            logger.debug("Unable to send to {}: {}", nickname, e.getMessage());
+            connection.close();
+        }
+    }
+
+    /**
+     * Close the connection, ending the session
+     */
+    void close() {
+        connection.close();
+    }
+
+    /**
+     * Check the client is in a channel. Channel commands sent outside one are ignored, as the client shows every
+     * error to the player
+     * @return true if in a channel
+     */
+    private boolean inChannel() {
+        return channel != null;
+    }
+
+    /**
+     * Build the USERS message for the current channel
+     * @return the message
+     */
+    private String usersMessage() {
+        return "USERS " + String.join("\n", names(channel));
+    }
+
+    /**
+     * Build the SCORES message for the current channel, with every player's score and lives
+     * @return the message
+     */
+    private String scoresMessage() {
+        var scores = new StringBuilder("SCORES ");
+        var first = true;
+        for (ClientSession member : channel.getMembers()) {
+            if (!first) scores.append('\n');
+            first = false;
+            scores.append(member.nickname).append(':').append(member.score).append(':')
+                .append(member.dead ? "DEAD" : String.valueOf(member.lives));
+        }
+        return scores.toString();
+    }
+
+    /**
+     * Get the nicknames of every player in a channel
+     * @param channel the channel
+     * @return nicknames, in the order they joined
+     */
+    private static String[] names(Channel channel) {
+        return channel.getMembers().stream().map(member -> member.nickname).toArray(String[]::new);
+    }
+
+    /**
+     * Read a number sent by the client
+     * @param value the text
+     * @return the number, or null if it isn't one
+     */
+    private static Integer parse(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A local TetrECS server, speaking the same web socket protocol as the online server. Can be run on its own for LAN
+ * play, or embedded in the game for offline play, testing and benchmarking.
+ *
+ * Each client is handled on its own thread. Channels keep their own state, and high scores are kept in memory.
+ *
+ * Clients that offer permessage-deflate have their longer messages compressed, unless disabled with
+ * -Dtetrecs.server.deflate=false. The bytes sent and received are counted, so the saving can be measured.
+ */
+public class TetrECSServer {
+
+    private static final Logger logger = LogManager.getLogger(TetrECSServer.class);
+
+    /**
+     * The port the online server uses, used when none is given
+     */
+    public static final int DEFAULT_PORT = 9700;
+
+    /**
+     * The number of high scores kept
+     */
+    private static final int MAX_HISCORES = 10;
+
+    /**
+     * The number of connections that can wait to be accepted, enough for a burst of clients connecting together
+     */
+    private static final int BACKLOG = 1024;
+
+    /**
+     * The shortest message compressed, unless set with -Dtetrecs.deflateThreshold. Shorter messages, such as SCORE and
+     * PIECE, save a few bytes at most
+     */
+    private static final int DEFAULT_DEFLATE_THRESHOLD = 64;
+
+    /**
+     * Accepts new clients
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * The shortest message compressed for clients that agree to it, or -1 to never compress
+     */
+    private volatile int deflateThreshold = Boolean.parseBoolean(System.getProperty("tetrecs.server.deflate", "true"))
+        ? Integer.getInteger("tetrecs.deflateThreshold", DEFAULT_DEFLATE_THRESHOLD) : -1;
+
+    /**
+     * Bytes written to every client, as sent on the wire
+     */
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     * Bytes read from every client, as sent on the wire
+     */
+    private final LongAdder bytesReceived = new LongAdder();
+
+    /**
+     * Runs the accept loop and one thread per client
+     */
+    private final ExecutorService threads = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "TetrECSServer-Client");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Every channel, by name
+     */
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Every connected client
+     */
+    private final Set<ClientSession> sessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * High scores, highest first
+     */
+    private final List<HiScore> hiScores = new ArrayList<>();
+
+    /**
+     * The number of clients connected so far, used to give each a starting nickname
+     */
+    private final AtomicInteger guests = new AtomicInteger();
+
+    /**
+     * Whether the server is accepting clients
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Create a server listening on the given port of the given address
+     * @param address address to bind, or null for all addresses
+     * @param port port, or 0 to pick any free port
+     * @throws IOException if the port can't be bound
+     */
+    public TetrECSServer(InetAddress address, int port) throws IOException {
+        serverSocket = new ServerSocket(port, BACKLOG, address);
+    }
+
+    /**
+     * Start accepting clients in the background
+     * @return this server
+     */
+    public TetrECSServer start() {
+        logger.info("Listening on {}", getUri());
+        threads.execute(this::acceptLoop);
+        return this;
+    }
+
+    /**
+     * Stop accepting clients and disconnect everyone
+     */
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Error closing server socket: {}", e.getMessage());
+        }
+        for (ClientSession session : sessions) session.close();
+        threads.shutdown();
+        logger.info("Stopped");
+    }
+
+    /**
+     * Set whether new connections may be compressed
+     * @param threshold the shortest message to compress, or -1 to never compress
+     * @return this server
+     */
+    public TetrECSServer setDeflateThreshold(int threshold) {
+        this.deflateThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Get the number of bytes written to clients, including frame headers and after compression
+     * @return bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * Get the number of bytes read from clients, including frame headers and before decompression
+     * @return bytes received
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Get the port the server is listening on
+     * @return port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the address clients on this machine can connect to
+     * @return web socket URI
+     */
+    public String getUri() {
+        var address = serverSocket.getInetAddress();
+        var host = address.isAnyLocalAddress() ? "localhost" : address.getHostAddress();
+        return "ws://" + host + ":" + getPort();
+    }
+
+    /**
+     * Accept clients until stopped, starting a session on its own thread for each
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                var connection = new WebSocketConnection(socket, deflateThreshold, bytesSent, bytesReceived);
+                var session = new ClientSession(this, connection, "Guest" + guests.incrementAndGet());
+                sessions.add(session);
+                threads.execute(session);
+            } catch (SocketException e) {
+                if (running) logger.error("Accept failed: {}", e.getMessage());
+            } catch (IOException e) {
+                logger.error("Unable to accept client: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the names of every channel
+     * @return channel names
+     */
+    List<String> getChannelNames() {
+        return new ArrayList<>(channels.keySet());
+    }
+
+    /**
+     * Get a channel by name
+     * @param name channel name
+     * @return the channel, or null if there isn't one
+     */
+    Channel getChannel(String name) {
+        return channels.get(name);
+    }
+
+    /**
+     * Create a new channel
+     * @param name channel name
+     * @return the channel, or null if one with that name already exists
+     */
+    Channel createChannel(String name) {
+        var channel = new Channel(name);
+        return channels.putIfAbsent(name, channel) == null ? channel : null;
+    }
+
+    /**
+     * Remove a channel once it is empty
+     * @param channel the channel
+     */
+    void removeChannel(Channel channel) {
+        channels.remove(channel.getName(), channel);
+    }
+
+    /**
+     * Forget a client once it has disconnected
+     * @param session the client
+     */
+    void removeSession(ClientSession session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Send a message to every connected client
+     * @param message message
+     */
+    void broadcast(String message) {
+        for (ClientSession session : sessions) session.send(message);
+    }
+
+    /**
+     * Get the high scores in the HISCORES format
+     * @return name:score lines, highest first
+     */
+    synchronized String getHiScores() {
+        var scores = new StringBuilder();
+        for (HiScore hiScore : hiScores) {
+            if (!scores.isEmpty()) scores.append('\n');
+            scores.append(hiScore.name()).append(':').append(hiScore.score());
+        }
+        return scores.toString();
+    }
+
+    /**
+     * Add a high score, keeping only the best
+     * @param name player name
+     * @param score score
+     */
+    synchronized void addHiScore(String name, int score) {
+        var position = 0;
+        while (position < hiScores.size() && hiScores.get(position).score() >= score) position++;
+        if (position >= MAX_HISCORES) return;
+
+        hiScores.add(position, new HiScore(name, score));
+        if (hiScores.size() > MAX_HISCORES) hiScores.remove(MAX_HISCORES);
+    }
+
+    /**
+     * Run a standalone server, for LAN play
+     * @param args optionally, the port to listen on
+     * @throws IOException if the port can't be bound
+     */
+    public static void main(String[] args) throws IOException {
+        var port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        new TetrECSServer(null, port).start();
+
+        //The client threads are daemons, so keep the process alive until it is killed
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * An entry in the high scores
+     * @param name player name
+     * @param score score
+     */
+    private record HiScore(String name, int score) {}
+}
@@ -0,0 +1,496 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The server side of a single web socket connection. Performs the opening handshake, then reads text messages and
+ * writes text frames. Only what the TetrECS protocol needs is supported: text messages, which may be fragmented,
+ * pings and closing.
+ *
+ * If the client offers it, and the server allows it, messages are compressed with permessage-deflate (RFC 7692).
+ * Messages shorter than the threshold are sent uncompressed, as compressing them costs more CPU than it saves bytes.
+ */
+class WebSocketConnection {
+
+    /**
+     * Appended to the client's key to make the accept key, from RFC 6455
+     */
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    /**
+     * The largest message accepted from a client. Larger messages close the connection
+     */
+    private static final int MAX_MESSAGE = 64 * 1024;
+
+    /**
+     * Opcode of a frame continuing a fragmented message
+     */
+    private static final int OP_CONTINUATION = 0x0;
+
+    /**
+     * Opcode of the first frame of a text message
+     */
+    private static final int OP_TEXT = 0x1;
+
+    /**
+     * Opcode of the first frame of a binary message, read as text
+     */
+    private static final int OP_BINARY = 0x2;
+
+    /**
+     * Opcode of a close frame
+     */
+    private static final int OP_CLOSE = 0x8;
+
+    /**
+     * Opcode of a ping, answered with a pong
+     */
+    private static final int OP_PING = 0x9;
+
+    /**
+     * Opcode of a pong
+     */
+    private static final int OP_PONG = 0xA;
+
+    /**
+     * Set in the first frame of a compressed message
+     */
+    private static final int RSV1 = 0x40;
+
+    /**
+     * The empty block that ends every deflated message, removed before sending and restored before inflating
+     */
+    private static final byte[] DEFLATE_TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+    /**
+     * The client's socket
+     */
+    private final Socket socket;
+
+    /**
+     * Reads from the socket. Only used by the reading thread
+     */
+    private final InputStream in;
+
+    /**
+     * Writes to the socket. Only used while holding the connection's lock, apart from the handshake
+     */
+    private final OutputStream out;
+
+    /**
+     * The message being reassembled from fragments
+     */
+    private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+
+    /**
+     * Whether the message being reassembled is compressed
+     */
+    private boolean messageCompressed = false;
+
+    /**
+     * Whether a close frame has been sent
+     */
+    private boolean closeSent = false;
+
+    /**
+     * The shortest message compressed, or -1 if compression isn't allowed
+     */
+    private final int deflateThreshold;
+
+    /**
+     * Compresses sent messages once permessage-deflate has been agreed. Guarded by the connection's lock, and null once
+     * closed
+     */
+    private Deflater deflater;
+
+    /**
+     * Inflates received messages once permessage-deflate has been agreed. Only used by the reading thread
+     */
+    private Inflater inflater;
+
+    /**
+     * Whether the client asked for each message to be compressed on its own
+     */
+    private boolean serverNoContextTakeover = false;
+
+    /**
+     * Holds the output of the deflater, reused between sent messages. Only used while holding the connection's lock
+     */
+    private final byte[] deflateBuffer = new byte[4096];
+
+    /**
+     * The compressed message being sent. Only used while holding the connection's lock
+     */
+    private final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+
+    /**
+     * Holds the output of the inflater, reused between received messages. Only used by the reading thread
+     */
+    private final byte[] inflateBuffer = new byte[4096];
+
+    /**
+     * The message being inflated. Only used by the reading thread
+     */
+    private final ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+
+    /**
+     * Counts the bytes written to the socket, after compression and including frame headers
+     */
+    private final LongAdder bytesSent;
+
+    /**
+     * Counts the bytes read from the socket, before decompression and including frame headers
+     */
+    private final LongAdder bytesReceived;
+
+    /**
+     * Wrap an accepted socket
+     * @param socket the socket
+     * @param deflateThreshold the shortest message to compress, or -1 to never agree to compression
+     * @param bytesSent counts the bytes written
+     * @param bytesReceived counts the bytes read
+     * @throws IOException if the socket's streams can't be opened
+     */
+    WebSocketConnection(Socket socket, int deflateThreshold, LongAdder bytesSent, LongAdder bytesReceived)
+        throws IOException {
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.deflateThreshold = deflateThreshold;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+    }
+
+    /**
+     * Read the client's upgrade request and accept it
+     * @throws IOException if the request isn't a valid web socket upgrade
+     */
+    void handshake() throws IOException {
+        var requestLine = readLine();
+        if (requestLine == null || !requestLine.startsWith("GET ")) throw new IOException("Not a GET request");
+
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            var colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+
+        var key = headers.get("sec-websocket-key");
+        if (key == null) {
+            writeAscii("HTTP/1.1 400 Bad Request\r\nConnection: close\r\n\r\n");
+            out.flush();
+            throw new IOException("Missing Sec-WebSocket-Key");
+        }
+
+        var extensions = deflateThreshold >= 0 ? negotiateDeflate(headers.get("sec-websocket-extensions")) : null;
+
+        writeAscii("HTTP/1.1 101 Switching Protocols\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + (extensions != null ? "Sec-WebSocket-Extensions: " + extensions + "\r\n" : "")
+            + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n");
+        out.flush();
+    }
+
+    /**
+     * Accept the first permessage-deflate offer the server can honour, and set up compression for it
+     * @param offers the client's Sec-WebSocket-Extensions header
+     * @return the Sec-WebSocket-Extensions response, or null if no offer was accepted
+     */
+    private String negotiateDeflate(String offers) {
+        if (offers == null) return null;
+
+        offer:
+        for (String offer : offers.split(",")) {
+            var parameters = offer.split(";");
+            if (!parameters[0].trim().equalsIgnoreCase("permessage-deflate")) continue;
+
+            var noContextTakeover = false;
+            for (int i = 1; i < parameters.length; i++) {
+                var parameter = parameters[i].trim();
+                var equals = parameter.indexOf('=');
+                var name = equals < 0 ? parameter : parameter.substring(0, equals).trim();
+                var value = equals < 0 ? null : parameter.substring(equals + 1).trim().replace("\"", "");
+
+                switch (name) {
+                    case "server_no_context_takeover" -> noContextTakeover = true;
+                    case "client_no_context_takeover", "client_max_window_bits" -> {
+                        //The inflater copes with any window the client uses, and with or without context takeover
+                    }
+                    case "server_max_window_bits" -> {
+                        //The deflater always uses the largest window
+                        if (!"15".equals(value)) continue offer;
+                    }
+                    default -> {
+                        continue offer;
+                    }
+                }
+            }
+
+            serverNoContextTakeover = noContextTakeover;
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            inflater = new Inflater(true);
+            return noContextTakeover ? "permessage-deflate; server_no_context_takeover" : "permessage-deflate";
+        }
+        return null;
+    }
+
+    /**
+     * Read the next text message, answering pings and skipping anything else
+     * @return the message, or null once the connection is closed
+     * @throws IOException if reading fails or the client breaks the protocol
+     */
+    String read() throws IOException {
+        while (true) {
+            int first = in.read();
+            if (first < 0) return null;
+            int second = readByte();
+
+            var fin = (first & 0x80) != 0;
+            var rsv1 = (first & RSV1) != 0;
+            var opcode = first & 0x0F;
+            var masked = (second & 0x80) != 0;
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = (readByte() << 8) | readByte();
+            } else if (length == 127) {
+                length = 0;
+                for (int i = 0; i < 8; i++) length = (length << 8) | readByte();
+            }
+
+            if (!masked) throw new IOException("Client frame not masked");
+            if (length > MAX_MESSAGE || message.size() + length > MAX_MESSAGE) throw new IOException("Message too large");
+
+            if (rsv1 && (inflater == null || opcode == OP_CONTINUATION || opcode >= OP_CLOSE)) {
+                throw new IOException("Unexpected compressed frame");
+            }
+
+            var mask = readFully(4);
+            var payload = readFully((int) length);
+            for (int i = 0; i < payload.length; i++) payload[i] ^= mask[i & 3];
+            bytesReceived.add(2 + (length < 126 ? 0 : length <= 0xFFFF ? 2 : 8) + 4 + length);
+
+            switch (opcode) {
+                case OP_TEXT, OP_BINARY, OP_CONTINUATION -> {
+                    if (opcode != OP_CONTINUATION) messageCompressed = rsv1;
+                    message.write(payload, 0, payload.length);
+                    if (fin) {
+                        var text = messageCompressed ? inflateMessage() : message.toString(StandardCharsets.UTF_8);
+                        message.reset();
+                        return text;
+                    }
+                }
+                case OP_PING -> writeFrame(OP_PONG, payload, payload.length);
+                case OP_CLOSE -> {
+                    close();
+                    return null;
+                }
+                default -> {
+                    //Pongs and unknown control frames are ignored
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a text message
+     * @param text the message
+     * @throws IOException if writing fails
+     */
+    synchronized void send(String text) throws IOException {
+        var bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (deflater == null || bytes.length < deflateThreshold) {
+            writeFrame(OP_TEXT, bytes, bytes.length);
+            return;
+        }
+
+        deflated.reset();
+        deflater.setInput(bytes);
+        int count;
+        do {
+            count = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+            deflated.write(deflateBuffer, 0, count);
+        } while (count == deflateBuffer.length);
+        if (serverNoContextTakeover) deflater.reset();
+
+        //Every flushed message ends with the same empty block, which the client adds back
+        writeFrame(OP_TEXT | RSV1, deflated.toByteArray(), deflated.size() - DEFLATE_TAIL.length);
+    }
+
+    /**
+     * Inflate the reassembled compressed message
+     * @return the message
+     * @throws IOException if the message isn't valid or is too large once inflated
+     */
+    private String inflateMessage() throws IOException {
+        message.write(DEFLATE_TAIL, 0, DEFLATE_TAIL.length);
+        inflater.setInput(message.toByteArray());
+        inflated.reset();
+        try {
+            while (!inflater.needsInput()) {
+                var count = inflater.inflate(inflateBuffer);
+                if (count == 0 && (inflater.finished() || inflater.needsDictionary())) break;
+                inflated.write(inflateBuffer, 0, count);
+                if (inflated.size() > MAX_MESSAGE) throw new IOException("Message too large");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed message", e);
+        }
+        return inflated.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send a close frame, if one hasn't been sent, and close the socket. Can be called from any thread. The inflater is
+     * left to the reading thread, which releases it once it stops reading
+     */
+    synchronized void close() {
+        try {
+            if (!closeSent && !socket.isClosed()) {
+                closeSent = true;
+                writeFrame(OP_CLOSE, new byte[0], 0);
+            }
+        } catch (IOException ignored) {
+            //The socket is being closed anyway
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            //Nothing more can be done
+        }
+        if (deflater != null) {
+            //Sends hold the same lock, so none can be using it. Later sends fail on the closed socket instead
+            deflater.end();
+            deflater = null;
+        }
+    }
+
+    /**
+     * Free the inflater. Must only be called by the reading thread, once it has stopped reading
+     */
+    void release() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * Get the address of the client
+     * @return address
+     */
+    String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    /**
+     * Write a single unmasked, unfragmented frame and flush it
+     * @param opcode frame opcode, with any reserved bits
+     * @param payload frame payload
+     * @param length how much of the payload to send
+     * @throws IOException if writing fails
+     */
+    private synchronized void writeFrame(int opcode, byte[] payload, int length) throws IOException {
+        out.write(0x80 | opcode);
+        if (length < 126) {
+            out.write(length);
+        } else if (length <= 0xFFFF) {
+            out.write(126);
+            out.write(length >>> 8);
+            out.write(length);
+        } else {
+            out.write(127);
+            for (int shift = 56; shift >= 0; shift -= 8) out.write((int) ((long) length >>> shift));
+        }
+        out.write(payload, 0, length);
+        out.flush();
+        bytesSent.add(2 + (length < 126 ? 0 : length <= 0xFFFF ? 2 : 8) + length);
+    }
+
+    /**
+     * Compute the Sec-WebSocket-Accept value for a client's key
+     * @param key the client's Sec-WebSocket-Key
+     * @return the accept value
+     */
+    private static String acceptKey(String key) {
+        try {
+            var sha1 = MessageDigest.getInstance("SHA-1");
+            var digest = sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 unavailable", e);
+        }
+    }
+
+    /**
+     * Read a CRLF-terminated line of the HTTP request
+     * @return the line without its terminator, or null at the end of the stream
+     * @throws IOException if reading fails
+     */
+    private String readLine() throws IOException {
+        var line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                var end = line.length();
+                if (end > 0 && line.charAt(end - 1) == '\r') line.setLength(end - 1);
+                return line.toString();
+            }
+            if (line.length() > 8192) throw new IOException("Header line too long");
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * Read a single byte of a frame
+     * @return the byte
+     * @throws IOException if reading fails or the stream ends
+     */
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException();
+        return b;
+    }
+
+    /**
+     * Read part of a frame
+     * @param length number of bytes
+     * @return the bytes
+     * @throws IOException if reading fails or the stream ends first
+     */
+    private byte[] readFully(int length) throws IOException {
+        var bytes = in.readNBytes(length);
+        if (bytes.length < length) throw new EOFException();
+        return bytes;
+    }
+
+    /**
+     * Write part of the HTTP response, without flushing it
+     * @param text the text
+     * @throws IOException if writing fails
+     */
+    private void writeAscii(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
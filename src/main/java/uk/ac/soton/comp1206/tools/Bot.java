@@ -0,0 +1,210 @@
+package uk.ac.soton.comp1206.tools;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Communicator.Delivery;
+import uk.ac.soton.comp1206.network.ProtocolMessage;
+import uk.ac.soton.comp1206.network.ProtocolMessage.*;
+
+/**
+ * A headless client that plays multiplayer through its own Communicator. The host bot of each channel creates it and
+ * starts the game once everyone has joined; the rest join it. Each bot then plays a piece every tick, reporting its
+ * score and lives and chatting now and then. A bot that dies tells the channel and starts again.
+ */
+class Bot {
+
+    /**
+     * How many ticks to wait before retrying CREATE or JOIN
+     */
+    private static final int RETRY_TICKS = 10;
+
+    /**
+     * The load generator collecting measurements
+     */
+    private final LoadGenerator generator;
+
+    /**
+     * The bot's own connection to the server
+     */
+    private final Communicator communicator;
+
+    /**
+     * The channel the bot plays in
+     */
+    private final String channel;
+
+    /**
+     * Whether this bot creates and starts the channel
+     */
+    private final boolean host;
+
+    /**
+     * The number of bots in the channel, which the host waits for before starting
+     */
+    private final int channelSize;
+
+    /**
+     * Send a chat message every this many moves, or 0 for never
+     */
+    private final int chatEvery;
+
+    /**
+     * When each PIECE request still waiting for a reply was sent, from System.nanoTime. The server replies in order
+     */
+    private final ConcurrentLinkedQueue<Long> pieceRequests = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether the bot is in its channel, set on the socket thread
+     */
+    private volatile boolean joined = false;
+
+    /**
+     * Whether the channel's game has started, set on the socket thread
+     */
+    private volatile boolean started = false;
+
+    /**
+     * The game being played, replaced when the bot dies or a game starts
+     */
+    private volatile BotGame game;
+
+    /**
+     * The game whose first pieces have been dealt. Only used by the tick
+     */
+    private BotGame dealtGame;
+
+    /**
+     * Ticks since CREATE or JOIN was last sent. Only used by the tick
+     */
+    private int ticksSinceAttempt;
+
+    /**
+     * Pieces played so far, used to space out chat messages. Only used by the tick
+     */
+    private int moves = 0;
+
+    /**
+     * Create a bot and connect it to the server
+     * @param generator the load generator collecting measurements
+     * @param server server to connect to
+     * @param channel channel to play in
+     * @param host whether this bot creates and starts the channel
+     * @param channelSize number of bots in the channel
+     * @param chatEvery send a chat message every this many moves, or 0 for never
+     */
+    Bot(LoadGenerator generator, String server, String channel, boolean host, int channelSize, int chatEvery) {
+        this.generator = generator;
+        this.channel = channel;
+        this.host = host;
+        this.channelSize = channelSize;
+        this.chatEvery = chatEvery;
+
+        //The host creates the channel straight away, and the others give it time before joining
+        ticksSinceAttempt = host ? RETRY_TICKS : 0;
+
+        communicator = new Communicator(server);
+        communicator.addListener(message -> generator.received(), Delivery.INLINE);
+        communicator.addMessageListener(this::receive, Delivery.INLINE);
+    }
+
+    /**
+     * Handle a message from the server, on the socket thread
+     * @param message the message
+     */
+    private void receive(ProtocolMessage message) {
+        if (message instanceof Join) {
+            joined = true;
+        } else if (message instanceof Users users) {
+            if (host && !started && users.users().size() >= channelSize) send("START");
+        } else if (message instanceof Start) {
+            newGame();
+            started = true;
+        } else if (message instanceof Piece piece) {
+            var sentAt = pieceRequests.poll();
+            if (sentAt != null) generator.pieceReceived(System.nanoTime() - sentAt);
+            var current = game;
+            if (current != null) current.enqueuePiece(piece.piece());
+        }
+    }
+
+    /**
+     * Take the bot's next step. Called regularly, never by two threads at once
+     */
+    void tick() {
+        if (!joined) {
+            if (++ticksSinceAttempt >= RETRY_TICKS) {
+                ticksSinceAttempt = 0;
+                send((host ? "CREATE " : "JOIN ") + channel);
+            }
+            return;
+        }
+
+        var current = game;
+        if (!started || current == null) return;
+
+        if (current != dealtGame) {
+            //Wait for the first two pieces of a new game to arrive
+            if (current.getQueuedPieces() < 2) return;
+            current.begin();
+            dealtGame = current;
+            return;
+        }
+
+        if (!current.playFirstFit() && !current.skip()) {
+            send("DIE");
+            newGame();
+            return;
+        }
+
+        moves++;
+        generator.moved();
+        send("SCORE " + current.getScore());
+        send("LIVES " + current.getLives());
+        if (chatEvery > 0 && moves % chatEvery == 0) send("MSG move " + moves);
+    }
+
+    /**
+     * Start a fresh game, requesting its pieces
+     */
+    private void newGame() {
+        var fresh = new BotGame();
+        fresh.setPieceRequestListener(this::requestPieces);
+        game = fresh;
+        fresh.requestPieces();
+    }
+
+    /**
+     * Request pieces from the server, timing each until its reply arrives
+     * @param count number of pieces
+     */
+    private void requestPieces(int count) {
+        for (int i = 0; i < count; i++) {
+            pieceRequests.add(System.nanoTime());
+            send("PIECE");
+        }
+    }
+
+    /**
+     * Send a message, counting it
+     * @param message the message
+     */
+    private void send(String message) {
+        generator.sent();
+        communicator.send(message);
+    }
+
+    /**
+     * Whether the bot is connected to the server
+     * @return true if connected
+     */
+    boolean isConnected() {
+        return communicator.getState() == Communicator.State.CONNECTED;
+    }
+
+    /**
+     * Leave the server
+     */
+    void quit() {
+        communicator.send("QUIT");
+    }
+}
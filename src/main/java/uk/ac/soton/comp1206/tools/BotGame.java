@@ -0,0 +1,54 @@
+package uk.ac.soton.comp1206.tools;
+
+import uk.ac.soton.comp1206.game.MultiplayerGame;
+
+/**
+ * A multiplayer game played by a bot. There is no game timer: the bot decides when each move happens, and gives up on
+ * a piece when it can't be played anywhere.
+ */
+class BotGame extends MultiplayerGame {
+
+    /**
+     * Create a new game on the standard 5x5 board
+     */
+    BotGame() {
+        super(5, 5);
+    }
+
+    /**
+     * Deal the first pieces from the queue, without starting a game timer
+     */
+    void begin() {
+        followingPiece = spawnPiece();
+        nextPiece();
+    }
+
+    /**
+     * Play the current piece in the first place it fits, trying each rotation in turn
+     * @return true if the piece was played
+     */
+    boolean playFirstFit() {
+        for (int rotation = 0; rotation < 4; rotation++) {
+            for (int x = 0; x < cols; x++) {
+                for (int y = 0; y < rows; y++) {
+                    if (grid.canPlayPiece(currentPiece, x, y)) return playPiece(x, y);
+                }
+            }
+            currentPiece.rotate();
+        }
+        return false;
+    }
+
+    /**
+     * Give up on the current piece, losing a life as if the timer had run out
+     * @return false if that was the last life
+     */
+    boolean skip() {
+        setLives(getLives() - 1);
+        if (getLives() < 0) return false;
+
+        nextPiece();
+        setMultiplier(1);
+        return true;
+    }
+}
@@ -0,0 +1,246 @@
+package uk.ac.soton.comp1206.tools;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import uk.ac.soton.comp1206.server.TetrECSServer;
+import uk.ac.soton.comp1206.util.Histogram;
+
+/**
+ * Load tests a TetrECS server with headless bot clients playing multiplayer, to find out how many players a server
+ * can take. Reports message throughput, the round-trip time of PIECE requests, and this process's CPU and memory use.
+ *
+ * Options, all optional:
+ * <ul>
+ *     <li>--server ws://host:port, or embedded (the default) to start a server in this process</li>
+ *     <li>--bots total number of bots (100)</li>
+ *     <li>--channel-size bots per channel (4)</li>
+ *     <li>--tick-ms time between each bot's moves (100)</li>
+ *     <li>--chat-every moves between each bot's chat messages, 0 for none (20)</li>
+ *     <li>--duration seconds to run for (30)</li>
+ *     <li>--report seconds between reports (5)</li>
+ *     <li>--deflate true to offer permessage-deflate compression (false)</li>
+ *     <li>--deflate-threshold the shortest message the embedded server compresses (64)</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    /**
+     * Messages given to the bots' communicators to send
+     */
+    private final LongAdder sent = new LongAdder();
+
+    /**
+     * Messages received by the bots
+     */
+    private final LongAdder received = new LongAdder();
+
+    /**
+     * Pieces played by the bots
+     */
+    private final LongAdder moves = new LongAdder();
+
+    /**
+     * Round-trip time of PIECE requests, in microseconds
+     */
+    private final Histogram pieceRoundTrip = new Histogram();
+
+    /**
+     * Every bot started
+     */
+    private final List<Bot> bots = new ArrayList<>();
+
+    /**
+     * Count a message given to a bot's communicator to send
+     */
+    void sent() {
+        sent.increment();
+    }
+
+    /**
+     * Count a message received by a bot
+     */
+    void received() {
+        received.increment();
+    }
+
+    /**
+     * Count a piece played by a bot
+     */
+    void moved() {
+        moves.increment();
+    }
+
+    /**
+     * Record the round-trip time of a PIECE request
+     * @param nanos time from sending the request to receiving the piece
+     */
+    void pieceReceived(long nanos) {
+        pieceRoundTrip.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Run the load test
+     * @param args options
+     * @throws IOException if the embedded server can't be started
+     * @throws InterruptedException if interrupted while running
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        //Keep the bots' logging and sound out of the measurements. Must happen before any game class is loaded
+        if (System.getProperty("tetrecs.logLevel") == null) System.setProperty("tetrecs.logLevel", "warn");
+        System.setProperty("tetrecs.mute", "true");
+
+        var options = parseOptions(args);
+        System.setProperty("tetrecs.deflate", options.getOrDefault("deflate", "false"));
+        if (options.containsKey("deflate-threshold")) {
+            System.setProperty("tetrecs.deflateThreshold", options.get("deflate-threshold"));
+        }
+
+        new LoadGenerator().run(
+            options.getOrDefault("server", "embedded"),
+            Integer.parseInt(options.getOrDefault("bots", "100")),
+            Integer.parseInt(options.getOrDefault("channel-size", "4")),
+            Integer.parseInt(options.getOrDefault("tick-ms", "100")),
+            Integer.parseInt(options.getOrDefault("chat-every", "20")),
+            Integer.parseInt(options.getOrDefault("duration", "30")),
+            Integer.parseInt(options.getOrDefault("report", "5")));
+        System.exit(0);
+    }
+
+    /**
+     * Start the bots, report on them while they play, then stop them
+     * @param server server to connect to, or embedded
+     * @param botCount number of bots
+     * @param channelSize bots per channel
+     * @param tickMillis time between each bot's moves
+     * @param chatEvery moves between chat messages
+     * @param duration seconds to run for
+     * @param reportSeconds seconds between reports
+     * @throws IOException if the embedded server can't be started
+     * @throws InterruptedException if interrupted while running
+     */
+    private void run(String server, int botCount, int channelSize, int tickMillis, int chatEvery, int duration,
+                     int reportSeconds) throws IOException, InterruptedException {
+        TetrECSServer embedded = null;
+        if (server.equals("embedded")) {
+            embedded = new TetrECSServer(InetAddress.getLoopbackAddress(), 0).start();
+            server = embedded.getUri();
+        }
+
+        System.out.printf("Starting %d bots in channels of %d against %s%n", botCount, channelSize, server);
+        var ticker = Executors.newScheduledThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()), runnable -> {
+            var thread = new Thread(runnable, "LoadGenerator-Tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (int i = 0; i < botCount; i++) {
+            var bot = new Bot(this, server, "load-" + (i / channelSize), i % channelSize == 0, channelSize, chatEvery);
+            bots.add(bot);
+            //Spread the bots' ticks out across the interval
+            ticker.scheduleAtFixedRate(bot::tick, (long) i * tickMillis / botCount, tickMillis, TimeUnit.MILLISECONDS);
+        }
+
+        var start = System.nanoTime();
+        var lastSent = 0L;
+        var lastReceived = 0L;
+        var lastMoves = 0L;
+        var lastCpu = processCpuNanos();
+        var lastReport = start;
+
+        while (System.nanoTime() - start < TimeUnit.SECONDS.toNanos(duration)) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(reportSeconds));
+
+            var now = System.nanoTime();
+            var seconds = (now - lastReport) / 1e9;
+            var cpu = processCpuNanos();
+            var totalSent = sent.sum();
+            var totalReceived = received.sum();
+            var totalMoves = moves.sum();
+
+            System.out.printf("%4.0fs connected=%d sent=%.0f/s received=%.0f/s moves=%.0f/s "
+                    + "piece rtt p50=%.2fms p99=%.2fms max=%.2fms cpu=%.0f%% heap=%dMB threads=%d%n",
+                (now - start) / 1e9, connectedBots(),
+                (totalSent - lastSent) / seconds, (totalReceived - lastReceived) / seconds,
+                (totalMoves - lastMoves) / seconds,
+                pieceRoundTrip.getValueAtPercentile(50) / 1000.0, pieceRoundTrip.getValueAtPercentile(99) / 1000.0,
+                pieceRoundTrip.getMax() / 1000.0,
+                100.0 * (cpu - lastCpu) / (now - lastReport) / Runtime.getRuntime().availableProcessors(),
+                usedHeapMegabytes(), ManagementFactory.getThreadMXBean().getThreadCount());
+
+            lastSent = totalSent;
+            lastReceived = totalReceived;
+            lastMoves = totalMoves;
+            lastCpu = cpu;
+            lastReport = now;
+        }
+
+        var elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Total: %d sent, %d received, %d moves in %.0fs; %d PIECE round trips, p50=%.2fms "
+                + "p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+            sent.sum(), received.sum(), moves.sum(), elapsed, pieceRoundTrip.getCount(),
+            pieceRoundTrip.getValueAtPercentile(50) / 1000.0, pieceRoundTrip.getValueAtPercentile(90) / 1000.0,
+            pieceRoundTrip.getValueAtPercentile(99) / 1000.0, pieceRoundTrip.getValueAtPercentile(99.9) / 1000.0,
+            pieceRoundTrip.getMax() / 1000.0);
+
+        if (embedded != null) {
+            System.out.printf("Server wire traffic: %d B sent (%.0f B/s), %d B received (%.0f B/s)%n",
+                embedded.getBytesSent(), embedded.getBytesSent() / elapsed,
+                embedded.getBytesReceived(), embedded.getBytesReceived() / elapsed);
+        }
+
+        ticker.shutdownNow();
+        for (Bot bot : bots) bot.quit();
+        Thread.sleep(500);
+        if (embedded != null) embedded.stop();
+    }
+
+    /**
+     * Count the bots connected to the server
+     * @return connected bots
+     */
+    private long connectedBots() {
+        return bots.stream().filter(Bot::isConnected).count();
+    }
+
+    /**
+     * Get the CPU time used by this process
+     * @return nanoseconds, or 0 if unavailable
+     */
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Get the heap in use
+     * @return megabytes
+     */
+    private static long usedHeapMegabytes() {
+        var runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+    }
+
+    /**
+     * Read --name value pairs
+     * @param args arguments
+     * @return option values by name
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Expected an option, got " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
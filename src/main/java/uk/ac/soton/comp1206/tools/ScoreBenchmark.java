@@ -0,0 +1,106 @@
+package uk.ac.soton.comp1206.tools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import uk.ac.soton.comp1206.game.ScoreService;
+import uk.ac.soton.comp1206.game.ScoreStore;
+
+/**
+ * Measures how quickly local scores can be saved durably, and checks they survive. Several threads submit scores as
+ * fast as they can, each its own rising share of the scores, then the scores file is reloaded and compared. The
+ * threads aren't kept in step, so a score overtaken by higher ones from the other threads before it is saved may no
+ * longer be a high score and isn't written, though it is still counted and timed.
+ * Optionally a torn record is added to the end of the file first, as a crash part way through an append would leave,
+ * to check it is discarded and the file repaired.
+ *
+ * Options, all optional:
+ * <ul>
+ *     <li>--file the scores file to write, which is replaced (a temporary file)</li>
+ *     <li>--writes total number of scores (10000)</li>
+ *     <li>--threads threads submitting scores (4)</li>
+ *     <li>--torn true to add a torn record before reloading (true)</li>
+ * </ul>
+ */
+public class ScoreBenchmark {
+
+    /**
+     * Run the benchmark
+     * @param args options
+     * @throws IOException if the scores file can't be used
+     * @throws InterruptedException if interrupted while running
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (System.getProperty("tetrecs.logLevel") == null) System.setProperty("tetrecs.logLevel", "warn");
+
+        var options = LoadGenerator.parseOptions(args);
+        var file = options.containsKey("file") ? Path.of(options.get("file")) : Files.createTempFile("scores", ".txt");
+        var writes = Integer.parseInt(options.getOrDefault("writes", "10000"));
+        var threadCount = Integer.parseInt(options.getOrDefault("threads", "4"));
+        var torn = Boolean.parseBoolean(options.getOrDefault("torn", "true"));
+
+        Files.deleteIfExists(file);
+        var service = new ScoreService(file);
+        service.load();
+
+        System.out.printf("Saving %d scores from %d threads to %s%n", writes, threadCount, file);
+        List<CompletableFuture<Void>> saves = new ArrayList<>(writes);
+        var threads = new ArrayList<Thread>();
+        var start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            var name = "bench-" + t;
+            var first = t;
+            var thread = new Thread(() -> {
+                List<CompletableFuture<Void>> mine = new ArrayList<>();
+                //The threads' scores interleave, so they reach the service in nearly rising order
+                for (int score = 1000 + first; score < 1000 + writes; score += threadCount) {
+                    mine.add(service.submit(name, score));
+                }
+                synchronized (saves) {
+                    saves.addAll(mine);
+                }
+            }, "ScoreBenchmark-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        CompletableFuture.allOf(saves.toArray(new CompletableFuture<?>[0])).join();
+        var seconds = (System.nanoTime() - start) / 1e9;
+        var expected = service.getScores();
+        service.close();
+
+        var latency = service.getCommitLatency();
+        System.out.printf("Saved %d scores in %.2fs (%.0f/s) with %d syncs, %.1f scores per sync%n",
+            service.getSavedCount(), seconds, service.getSavedCount() / seconds, service.getSyncCount(),
+            (double) service.getSavedCount() / Math.max(1, service.getSyncCount()));
+        System.out.printf("Time to durable: p50=%.2fms p99=%.2fms max=%.2fms%n",
+            latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+            latency.getMax() / 1000.0);
+
+        if (torn) {
+            Files.writeString(file, "bench-torn:99999", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+
+        var reloaded = new ScoreStore(file);
+        var loadStart = System.nanoTime();
+        reloaded.load();
+        var loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart);
+        reloaded.close();
+        System.out.printf("Reloaded in %d ms, %d bad lines discarded; scores %s%n", loadMillis,
+            reloaded.getDiscardedLines(), reloaded.getScores().equals(expected) ? "intact" : "DIFFER");
+
+        if (torn) {
+            try (var repaired = new ScoreStore(file)) {
+                repaired.load();
+                System.out.printf("After repair, %d bad lines%n", repaired.getDiscardedLines());
+            }
+        }
+        System.exit(reloaded.getScores().equals(expected) ? 0 : 1);
+    }
+}
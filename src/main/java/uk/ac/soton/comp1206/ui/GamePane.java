@@ -43,6 +43,41 @@ public class GamePane extends StackPane {
      */
     private final boolean autoScale = true;
 
+    /**
+     * Determines whether scaling up is rounded down to a whole number for crisper rendering
+     */
+    private boolean integerScale = false;
+
+    /**
+     * The scale transformation applied to everything inside this pane
+     */
+    private final Scale scale = new Scale(1, 1, 0, 0);
+
+    /**
+     * The translation applied to keep the display centred
+     */
+    private final Translate translate = new Translate(0, 0);
+
+    /**
+     * The width the transformations were last calculated for
+     */
+    private double lastWidth = -1;
+
+    /**
+     * The height the transformations were last calculated for
+     */
+    private double lastHeight = -1;
+
+    /**
+     * The number of layout passes this pane has performed
+     */
+    private long layoutPasses = 0;
+
+    /**
+     * The number of times the transformations have been recalculated
+     */
+    private long transformUpdates = 0;
+
     /**
      * Create a new scalable GamePane with the given drawing width and height.
      * @param width width
@@ -55,6 +90,9 @@ public class GamePane extends StackPane {
 
         getStyleClass().add("gamepane");
         setAlignment(Pos.TOP_LEFT);
+
+        //The transformations are added once and only have their values changed on resize
+        getTransforms().setAll(translate, scale);
     }
 
     /**
@@ -65,21 +103,63 @@ public class GamePane extends StackPane {
         this.scalar = scalar;
     }
 
+    /**
+     * Set whether scaling up should snap to whole number scale factors
+     * @param integerScale true to snap to whole number scale factors
+     */
+    public void setIntegerScale(boolean integerScale) {
+        this.integerScale = integerScale;
+
+        //Force the transformations to be recalculated on the next layout pass
+        lastWidth = -1;
+        requestLayout();
+    }
+
+    /**
+     * Get the number of layout passes this pane has performed
+     * @return number of layout passes
+     */
+    public long getLayoutPasses() {
+        return layoutPasses;
+    }
+
+    /**
+     * Get the number of times the transformations have been recalculated
+     * @return number of transformation updates
+     */
+    public long getTransformUpdates() {
+        return transformUpdates;
+    }
+
     /**
      * Use a Graphics Transformation to scale everything inside this pane. Padding is added to the edges to maintain
-     * the correct aspect ratio and keep the display centred.
+     * the correct aspect ratio and keep the display centred. The transformations are only recalculated when the size
+     * of the pane has changed.
      */
     @Override
     public void layoutChildren() {
         super.layoutChildren();
+        layoutPasses++;
 
         if(!autoScale) {
             return;
         }
 
+        //Get the parent width and height
+        var parentWidth = getWidth();
+        var parentHeight = getHeight();
+
+        //Nothing to do if the size hasn't changed since the last pass
+        if (parentWidth == lastWidth && parentHeight == lastHeight) {
+            return;
+        }
+        lastWidth = parentWidth;
+        lastHeight = parentHeight;
+        transformUpdates++;
+
         //Work out the scale factor height and width
-        var scaleFactorHeight = getHeight() / height;
-        var scaleFactorWidth = getWidth() / width;
+        var scaleFactorHeight = parentHeight / height;
+        var scaleFactorWidth = parentWidth / width;
 
         //Work out whether to scale by width or height
         if (scaleFactorHeight > scaleFactorWidth) {
@@ -88,22 +168,21 @@ public class GamePane extends StackPane {
             setScalar(scaleFactorHeight);
         }
 
-        //Set up the scale
-        Scale scale = new Scale(scalar,scalar);
-
-        //Get the parent width and height
-        var parentWidth = getWidth();
-        var parentHeight = getHeight();
+        //Snap to a whole number when scaling up, if enabled
+        if (integerScale && scalar >= 1) {
+            setScalar(Math.floor(scalar));
+        }
 
         //Get the padding needed on the top and left
         var paddingLeft = (parentWidth - (width * scalar)) / 2.0;
         var paddingTop = (parentHeight - (height * scalar)) / 2.0;
 
         //Perform the transformation
-        Translate translate = new Translate(paddingLeft, paddingTop);
-        scale.setPivotX(0);
-        scale.setPivotY(0);
-        getTransforms().setAll(translate, scale);
+        translate.setX(paddingLeft);
+        translate.setY(paddingTop);
+        scale.setX(scalar);
+        scale.setY(scalar);
+        logger.debug("Rescaled to {} after {} layout passes", scalar, layoutPasses);
     }
 
 }
@@ -1,6 +1,11 @@
 package uk.ac.soton.comp1206.ui;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.scene.Scene;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
@@ -9,8 +14,12 @@ import javafx.stage.Stage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.App;
+import uk.ac.soton.comp1206.component.PerformanceOverlay;
 import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.Multimedia;
+import uk.ac.soton.comp1206.game.ScoreService;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.server.TetrECSServer;
 import uk.ac.soton.comp1206.scene.*;
 
 /**
@@ -54,6 +63,31 @@ public class GameWindow {
      */
     final Communicator communicator;
 
+    /**
+     * The server to connect to, unless set with -Dtetrecs.server
+     */
+    private static final String DEFAULT_SERVER = "ws://ofb-labs.soton.ac.uk:9700";
+
+    /**
+     * The server running in this process, if one was started
+     */
+    private TetrECSServer embeddedServer;
+
+    /**
+     * The local high scores, loaded in the background at startup and shared by every scene
+     */
+    private final ScoreService scoreService = new ScoreService(Path.of("scores.txt"));
+
+    /**
+     * Whether the communicator is connected to the server
+     */
+    private final ReadOnlyBooleanWrapper online = new ReadOnlyBooleanWrapper(false);
+
+    /**
+     * The performance overlay, carried over into every scene
+     */
+    private final PerformanceOverlay performanceOverlay = new PerformanceOverlay();
+
     /**
      * Create a new GameWindow attached to the given stage with the specified width and height
      * @param stage stage
@@ -66,6 +100,19 @@ public class GameWindow {
 
         this.stage = stage;
 
+        //Load the local scores while everything else starts up
+        scoreService.load();
+
+        //Setup communicator, which connects in the background while the window is set up
+        communicator = new Communicator(serverUri());
+        communicator.addConnectionListener(state -> Platform.runLater(this::updateOnline));
+        Platform.runLater(this::updateOnline);
+
+        //Publish the network metrics over JMX, and log them every minute unless set otherwise
+        communicator.getMetrics().register();
+        var metricsInterval = Long.getLong("tetrecs.metricsInterval", 60);
+        if (metricsInterval > 0) communicator.getMetrics().logEvery(metricsInterval);
+
         //Setup window
         setupStage();
 
@@ -75,9 +122,6 @@ public class GameWindow {
         //Setup default scene
         setupDefaultScene();
 
-        //Setup communicator
-        communicator = new Communicator("ws://ofb-labs.soton.ac.uk:9700");
-
         //Go to menu
         startMenu();
     }
@@ -92,6 +136,9 @@ public class GameWindow {
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-Regular.ttf"),32);
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-Bold.ttf"),32);
         Font.loadFont(getClass().getResourceAsStream("/style/Orbitron-ExtraBold.ttf"),32);
+
+        //Decode the sound effects once, in the background, so playing them costs nothing later
+        Multimedia.preloadEffects();
     }
 
     /**
@@ -152,10 +199,7 @@ public class GameWindow {
         stage.setTitle("TetrECS");
         stage.setMinWidth(width);
         stage.setMinHeight(height + 20);
-        stage.setOnCloseRequest(ev -> {
-            getCommunicator().send("QUIT");
-            App.getInstance().shutdown();
-        });
+        stage.setOnCloseRequest(ev -> exit());
     }
 
     /**
@@ -193,10 +237,11 @@ public class GameWindow {
     }
 
     /**
-     * Quit the game
+     * Quit the game, saving any scores still waiting to be written
      */
     public void exit() {
         getCommunicator().send("QUIT");
+        scoreService.close();
         App.getInstance().shutdown();
     }
 
@@ -208,6 +253,14 @@ public class GameWindow {
         return scene;
     }
 
+    /**
+     * Get the local high scores
+     * @return score service
+     */
+    public ScoreService getScoreService() {
+        return scoreService;
+    }
+
     /**
      * Get the width of the Game Window
      * @return width
@@ -224,6 +277,14 @@ public class GameWindow {
         return this.height;
     }
 
+    /**
+     * Get the performance overlay shown on top of every scene
+     * @return performance overlay
+     */
+    public PerformanceOverlay getPerformanceOverlay() {
+        return performanceOverlay;
+    }
+
     /**
      * Get the communicator
      * @return communicator
@@ -231,4 +292,38 @@ public class GameWindow {
     public Communicator getCommunicator() {
         return communicator;
     }
+
+    /**
+     * Get the server to connect to. With -Dtetrecs.server=embedded, a local server is started in this process for
+     * playing offline
+     * @return web socket URI
+     */
+    private String serverUri() {
+        var server = System.getProperty("tetrecs.server", DEFAULT_SERVER);
+        if (!server.equals("embedded")) return server;
+
+        try {
+            embeddedServer = new TetrECSServer(InetAddress.getLoopbackAddress(), 0).start();
+            return embeddedServer.getUri();
+        } catch (IOException e) {
+            logger.error("Unable to start embedded server: {}", e.getMessage());
+            return DEFAULT_SERVER;
+        }
+    }
+
+    /**
+     * Update whether the communicator is connected from its current state, which may have changed again since the
+     * update was requested
+     */
+    private void updateOnline() {
+        online.set(communicator.getState() == Communicator.State.CONNECTED);
+    }
+
+    /**
+     * Get whether the communicator is connected to the server. Only changes on the JavaFX thread
+     * @return online property
+     */
+    public ReadOnlyBooleanProperty onlineProperty() {
+        return online.getReadOnlyProperty();
+    }
 }
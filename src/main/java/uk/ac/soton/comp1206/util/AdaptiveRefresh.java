@@ -0,0 +1,192 @@
+package uk.ac.soton.comp1206.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a refresh, such as polling the server, at an interval that adapts to whether anything is happening.
+ *
+ * Each refresh that finds nothing changed doubles the interval, up to the maximum, and a refresh that finds a change
+ * drops it back to the minimum. While inactive, such as when the window isn't focused, the maximum is always used.
+ * A refresh can be made straight away after a user action with refreshNow(). Can be used from any thread.
+ */
+public class AdaptiveRefresh {
+
+    /**
+     * The refresh to run
+     */
+    private final Runnable refresh;
+
+    /**
+     * Shortest interval between refreshes, used while things are changing
+     */
+    private final long minMillis;
+
+    /**
+     * Longest interval between refreshes, used while nothing changes or while inactive
+     */
+    private final long maxMillis;
+
+    /**
+     * Runs the refreshes on their own thread
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The interval before the next refresh while active
+     */
+    private long intervalMillis;
+
+    /**
+     * Whether the user is active, so refreshes are wanted often
+     */
+    private boolean active = true;
+
+    /**
+     * Whether refreshing has been started and not stopped
+     */
+    private boolean running = false;
+
+    /**
+     * The next refresh, if one is scheduled
+     */
+    private ScheduledFuture<?> next;
+
+    /**
+     * Whether a refresh is running
+     */
+    private boolean refreshing = false;
+
+    /**
+     * Whether a refresh was asked for straight away and hasn't started yet, so it mustn't be put off
+     */
+    private boolean pendingNow = false;
+
+    /**
+     * When the last refresh started, from System.nanoTime
+     */
+    private long lastRunNanos;
+
+    /**
+     * Create a refresh, not yet started
+     * @param name name of the thread running the refresh
+     * @param refresh the refresh to run
+     * @param minMillis shortest interval between refreshes
+     * @param maxMillis longest interval between refreshes
+     */
+    public AdaptiveRefresh(String name, Runnable refresh, long minMillis, long maxMillis) {
+        this.refresh = refresh;
+        this.minMillis = minMillis;
+        this.maxMillis = maxMillis;
+        this.intervalMillis = minMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Refresh straight away, then keep refreshing
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        refreshNow();
+    }
+
+    /**
+     * Stop refreshing for good
+     */
+    public synchronized void stop() {
+        running = false;
+        if (next != null) next.cancel(false);
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Refresh straight away and return to the shortest interval, such as after the user does something
+     */
+    public synchronized void refreshNow() {
+        if (!running) return;
+        intervalMillis = minMillis;
+        pendingNow = true;
+        //A refresh already running schedules the next straight away once it finishes
+        if (!refreshing) schedule(0);
+    }
+
+    /**
+     * Report what the last refresh found, adjusting the interval to the next. The next refresh is moved to match,
+     * counted from when the last one started
+     * @param changed whether anything had changed
+     */
+    public synchronized void result(boolean changed) {
+        intervalMillis = changed ? minMillis : Math.min(maxMillis, intervalMillis * 2);
+        reschedule();
+    }
+
+    /**
+     * Set whether refreshes are wanted often. While inactive the longest interval is used, and on becoming active
+     * again a refresh is made straight away
+     * @param active whether the user is active
+     */
+    public synchronized void setActive(boolean active) {
+        if (this.active == active) return;
+        this.active = active;
+        if (active) {
+            refreshNow();
+        } else {
+            reschedule();
+        }
+    }
+
+    /**
+     * Get the interval before the refresh after next
+     * @return milliseconds
+     */
+    public synchronized long getIntervalMillis() {
+        return active ? intervalMillis : maxMillis;
+    }
+
+    /**
+     * Schedule the next refresh, replacing any already scheduled. Called holding the lock
+     * @param delayMillis delay before the refresh
+     */
+    private void schedule(long delayMillis) {
+        if (next != null) next.cancel(false);
+        next = scheduler.schedule(this::run, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Move the next refresh to the current interval after the last one started, unless it is running or was asked
+     * for straight away. Called holding the lock
+     */
+    private void reschedule() {
+        if (!running || refreshing || pendingNow || next == null) return;
+        var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRunNanos);
+        schedule(Math.max(0, getIntervalMillis() - elapsedMillis));
+    }
+
+    /**
+     * Run the refresh, then schedule the next one at the current interval, or straight away if one was asked for
+     * while it ran
+     */
+    private void run() {
+        synchronized (this) {
+            if (!running) return;
+            refreshing = true;
+            pendingNow = false;
+            lastRunNanos = System.nanoTime();
+        }
+        try {
+            refresh.run();
+        } finally {
+            synchronized (this) {
+                refreshing = false;
+                if (running) schedule(pendingNow ? 0 : getIntervalMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package uk.ac.soton.comp1206.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of positive long values, such as durations in nanoseconds.
+ *
+ * Values are stored in log-linear buckets in the style of an HDR histogram: each power of two is split into a fixed
+ * number of sub-buckets, so every recorded value keeps roughly the same relative precision (about 3%) from
+ * nanoseconds up to minutes. Recording is a single atomic increment and can be done from any thread.
+ */
+public class Histogram {
+
+    /**
+     * Number of bits of precision kept within each power of two
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Number of sub-buckets within each power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Total number of buckets, enough to cover every positive long
+     */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * The number of values recorded in each bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The total number of values recorded
+     */
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * The largest value recorded
+     */
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Record a value. Negative values are recorded as 0
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+
+        long max;
+        while (value > (max = maxValue.get())) {
+            if (maxValue.compareAndSet(max, value)) break;
+        }
+    }
+
+    /**
+     * Get the value at the given percentile. The result is the upper bound of the bucket holding that percentile
+     * @param percentile percentile between 0 and 100
+     * @return the value at the percentile, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        var total = totalCount.get();
+        if (total == 0) return 0;
+
+        var target = Math.max(1, (long) Math.ceil(total * Math.min(100, percentile) / 100.0));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Get the number of values recorded
+     * @return count
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * Get the largest value recorded
+     * @return the maximum
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * Clear every recorded value
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        maxValue.set(0);
+    }
+
+    /**
+     * Work out the bucket a value belongs in
+     * @param value the value
+     * @return bucket index
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        //The power of two the value falls in decides the range, the bits below the top bit pick the sub-bucket
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var shift = exponent - SUB_BUCKET_BITS;
+        var subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Work out the largest value that falls in the given bucket
+     * @param index bucket index
+     * @return upper bound of the bucket
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        var shift = index / SUB_BUCKETS - 1;
+        var subBucket = index % SUB_BUCKETS;
+        return (((long) (SUB_BUCKETS + subBucket + 1)) << shift) - 1;
+    }
+}